@@ -0,0 +1,117 @@
+package com.crio.xpoll.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.model.Choice;
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.Response;
+import com.crio.xpoll.util.DatabaseConnection;
+import com.crio.xpoll.util.DatabaseSetup;
+
+/**
+ * Shared setup for the benchmarks: connects to the database from application.properties,
+ * recreates the schema once per forked JVM and seeds users and votes in bulk.
+ * The benchmarks wipe whatever is in that database, so point it at a local instance.
+ */
+final class BenchmarkDatabase {
+
+    private static final int SEED_CHUNK = 1_000;
+
+    private static DatabaseConnection databaseConnection;
+
+    private BenchmarkDatabase() {
+    }
+
+    static synchronized DatabaseConnection connect() {
+        if (databaseConnection == null) {
+            databaseConnection = DatabaseConnection.getInstance(properties());
+            DatabaseSetup.executeSQLScript(databaseConnection);
+        }
+        return databaseConnection;
+    }
+
+    /**
+     * Loads a fresh copy of application.properties, for benchmarks that tweak the settings.
+     */
+    static Properties properties() {
+        Properties properties = new Properties();
+        try (InputStream input = BenchmarkDatabase.class.getClassLoader().getResourceAsStream("application.properties")) {
+            if (input == null) {
+                throw new IllegalStateException("application.properties not found on the classpath");
+            }
+            properties.load(input);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return properties;
+    }
+
+    /**
+     * Creates {@code count} users with unique names and returns their IDs.
+     */
+    static int[] seedUsers(DatabaseConnection db, int count) throws SQLException {
+        int[] ids = new int[count];
+        String prefix = "bench-" + System.nanoTime() + "-";
+        int created = 0;
+        try (Connection conn = db.getConnection()) {
+            while (created < count) {
+                int chunk = Math.min(SEED_CHUNK, count - created);
+                StringBuilder sql = new StringBuilder("INSERT INTO users (username, password) VALUES ");
+                for (int i = 0; i < chunk; i++) {
+                    sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString(), PreparedStatement.RETURN_GENERATED_KEYS)) {
+                    int param = 1;
+                    for (int i = 0; i < chunk; i++) {
+                        stmt.setString(param++, prefix + (created + i));
+                        stmt.setString(param++, "password");
+                    }
+                    stmt.executeUpdate();
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        while (keys.next()) {
+                            ids[created++] = keys.getInt(1);
+                        }
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    static List<String> choiceTexts(int choiceCount) {
+        List<String> choices = new ArrayList<>(choiceCount);
+        for (int i = 1; i <= choiceCount; i++) {
+            choices.add("Option " + i);
+        }
+        return choices;
+    }
+
+    /**
+     * Casts {@code perChoice} votes on every choice of the poll, one per user.
+     */
+    static void seedResponses(ResponseDAO responseDAO, Poll poll, int[] userIds, int perChoice) throws SQLException {
+        List<Response> batch = new ArrayList<>(SEED_CHUNK);
+        for (Choice choice : poll.getChoices()) {
+            for (int i = 0; i < perChoice; i++) {
+                batch.add(new Response(poll.getId(), choice.getId(), userIds[i]));
+                if (batch.size() == SEED_CHUNK) {
+                    responseDAO.createResponses(batch);
+                    batch = new ArrayList<>(SEED_CHUNK);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            responseDAO.createResponses(batch);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.crio.xpoll.bench;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crio.xpoll.dao.PollDAO;
+import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.model.Choice;
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.PollResults;
+import com.crio.xpoll.model.PollSummary;
+import com.crio.xpoll.util.DatabaseConnection;
+
+/**
+ * Read and create paths of PollDAO for polls of different sizes and popularity.
+ * Thread count is set on the command line, e.g. {@code -PjmhArgs="PollBenchmark -t 8"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class PollBenchmark {
+
+    @Param({ "2", "5", "20" })
+    public int choiceCount;
+
+    @Param({ "0", "1000", "10000" })
+    public int responsesPerChoice;
+
+    private DatabaseConnection db;
+    private PollDAO pollDAO;
+    private int pollId;
+    private int userId;
+    private List<String> choices;
+
+    @Setup
+    public void setup() throws SQLException {
+        db = BenchmarkDatabase.connect();
+        pollDAO = new PollDAO(db);
+        ResponseDAO responseDAO = new ResponseDAO(db);
+
+        userId = new UserDAO(db).createUser("bench-owner-" + System.nanoTime(), "password").getUserId();
+        choices = BenchmarkDatabase.choiceTexts(choiceCount);
+        Poll poll = pollDAO.createPoll(userId, "Benchmark question", choices);
+        pollId = poll.getId();
+
+        int[] voters = BenchmarkDatabase.seedUsers(db, Math.max(responsesPerChoice, 1));
+        BenchmarkDatabase.seedResponses(responseDAO, poll, voters, responsesPerChoice);
+    }
+
+    @Benchmark
+    public Poll getPollCached() throws SQLException {
+        return pollDAO.getPoll(pollId);
+    }
+
+    @Benchmark
+    public Poll getPollUncached() throws SQLException {
+        pollDAO.getPollCache().invalidate(pollId);
+        return pollDAO.getPoll(pollId);
+    }
+
+    /**
+     * The baseline for {@link #getPollUncached}: the poll and its choices read with two queries,
+     * as {@code PollDAO.getPoll} did before it was changed to a single join.
+     */
+    @Benchmark
+    public Poll getPollTwoQueries() throws SQLException {
+        try (Connection conn = db.getConnection();
+             PreparedStatement stmt = conn.prepareStatement("SELECT * FROM polls WHERE id = ?")) {
+            stmt.setInt(1, pollId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    throw new SQLException("Poll not found with ID: " + pollId);
+                }
+                List<Choice> pollChoices = new ArrayList<>();
+                try (PreparedStatement choicesStmt = conn.prepareStatement("SELECT * FROM choices WHERE poll_id = ?")) {
+                    choicesStmt.setInt(1, pollId);
+                    try (ResultSet choicesRs = choicesStmt.executeQuery()) {
+                        while (choicesRs.next()) {
+                            pollChoices.add(new Choice(choicesRs.getInt("id"), choicesRs.getInt("poll_id"),
+                                    choicesRs.getString("choice_text")));
+                        }
+                    }
+                }
+                return new Poll(rs.getInt("id"), rs.getInt("user_id"), rs.getString("question"), pollChoices,
+                        rs.getBoolean("is_closed"));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<PollSummary> getPollSummaries() throws SQLException {
+        return pollDAO.getPollSummaries(pollId);
+    }
+
+    @Benchmark
+    public PollResults getPollResults() throws SQLException {
+        return pollDAO.getPollResults(pollId, null);
+    }
+
+    @Benchmark
+    public Poll createPoll() throws SQLException {
+        return pollDAO.createPoll(userId, "Benchmark question", choices);
+    }
+}
@@ -0,0 +1,118 @@
+package com.crio.xpoll.bench;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crio.xpoll.dao.PollDAO;
+import com.crio.xpoll.dao.ResponseBatchWriter;
+import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.Response;
+import com.crio.xpoll.util.DatabaseConnection;
+
+/**
+ * Vote ingestion throughput: one insert per call, explicit batches and the write-behind writer.
+ * Every vote is a distinct (choice, user) pair; a fresh poll is opened whenever those run out.
+ * Thread count is set on the command line, e.g. {@code -PjmhArgs="ResponseBenchmark -t 16"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class ResponseBenchmark {
+
+    private static final int VOTERS = 50_000;
+
+    @Param({ "2", "20" })
+    public int choiceCount;
+
+    @Param({ "100" })
+    public int batchSize;
+
+    private PollDAO pollDAO;
+    private ResponseDAO responseDAO;
+    private ResponseBatchWriter batchWriter;
+    private int ownerId;
+    private int[] voters;
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentHashMap<Long, Poll> pollsByGeneration = new ConcurrentHashMap<>();
+
+    @Setup
+    public void setup() throws SQLException {
+        DatabaseConnection db = BenchmarkDatabase.connect();
+        pollDAO = new PollDAO(db);
+        responseDAO = new ResponseDAO(db);
+        batchWriter = new ResponseBatchWriter(responseDAO);
+        ownerId = new UserDAO(db).createUser("bench-owner-" + System.nanoTime(), "password").getUserId();
+        voters = BenchmarkDatabase.seedUsers(db, VOTERS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchWriter.close();
+    }
+
+    @Benchmark
+    public Response createResponse() throws SQLException {
+        long n = sequence.getAndIncrement();
+        Poll poll = pollFor(n);
+        return responseDAO.createResponse(poll.getId(), choiceFor(poll, n), voterFor(n));
+    }
+
+    @Benchmark
+    public List<Response> createResponsesBatch() throws SQLException {
+        List<Response> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            long n = sequence.getAndIncrement();
+            Poll poll = pollFor(n);
+            batch.add(new Response(poll.getId(), choiceFor(poll, n), voterFor(n)));
+        }
+        return responseDAO.createResponses(batch);
+    }
+
+    @Benchmark
+    public Response submitWriteBehind() {
+        long n = sequence.getAndIncrement();
+        Poll poll = pollFor(n);
+        return batchWriter.submit(poll.getId(), choiceFor(poll, n), voterFor(n)).join();
+    }
+
+    private Poll pollFor(long n) {
+        long generation = n / ((long) VOTERS * choiceCount);
+        return pollsByGeneration.computeIfAbsent(generation, g -> {
+            try {
+                return pollDAO.createPoll(ownerId, "Benchmark question", BenchmarkDatabase.choiceTexts(choiceCount));
+            } catch (SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private int choiceFor(Poll poll, long n) {
+        return poll.getChoices().get((int) (n % choiceCount)).getId();
+    }
+
+    private int voterFor(long n) {
+        return voters[(int) ((n / choiceCount) % VOTERS)];
+    }
+}
@@ -0,0 +1,116 @@
+package com.crio.xpoll.bench;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crio.xpoll.dao.PollDAO;
+import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.Response;
+import com.crio.xpoll.util.DatabaseConnection;
+
+/**
+ * Insert rate of the responses table before and after the surrogate-key layout.
+ * {@code composite} recreates the original table clustered on (poll_id, choice_id, user_id);
+ * {@code surrogate} keeps the current schema. Voters arrive in random order, as they do in a live
+ * poll, which scatters composite-key inserts across the clustered index but not surrogate-key ones.
+ * Each layout runs in its own fork, so every trial starts from a freshly created schema.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 20)
+@Fork(1)
+public class ResponseSchemaBenchmark {
+
+    private static final int VOTERS = 200_000;
+    private static final int BATCH_SIZE = 100;
+
+    private static final String COMPOSITE_LAYOUT = "CREATE TABLE responses ("
+            + "poll_id INT NOT NULL, choice_id INT NOT NULL, user_id INT NOT NULL, "
+            + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, "
+            + "PRIMARY KEY (poll_id, choice_id, user_id), "
+            + "FOREIGN KEY (poll_id) REFERENCES polls(id) ON DELETE CASCADE, "
+            + "FOREIGN KEY (choice_id) REFERENCES choices(id) ON DELETE CASCADE, "
+            + "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE)";
+
+    @Param({ "composite", "surrogate" })
+    public String layout;
+
+    private PollDAO pollDAO;
+    private ResponseDAO responseDAO;
+    private int ownerId;
+    private int[] voters;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile Poll poll;
+    private volatile long pollGeneration = -1;
+
+    @Setup
+    public void setup() throws SQLException {
+        DatabaseConnection db = BenchmarkDatabase.connect();
+        if ("composite".equals(layout)) {
+            try (Connection conn = db.getConnection();
+                 Statement stmt = conn.createStatement()) {
+                // poll_summaries resolves the table by name, so it works again once recreated
+                stmt.execute("DROP TABLE responses");
+                stmt.execute(COMPOSITE_LAYOUT);
+            }
+        }
+        pollDAO = new PollDAO(db);
+        responseDAO = new ResponseDAO(db);
+        ownerId = new UserDAO(db).createUser("bench-owner-" + System.nanoTime(), "password").getUserId();
+
+        // Shuffled so user_id arrives in no particular order
+        voters = BenchmarkDatabase.seedUsers(db, VOTERS);
+        Random random = new Random(42);
+        for (int i = voters.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = voters[i];
+            voters[i] = voters[j];
+            voters[j] = swap;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<Response> insertBatch() throws SQLException {
+        List<Response> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            long n = sequence.getAndIncrement();
+            Poll current = pollFor(n / VOTERS);
+            int choice = current.getChoices().get((int) (n % 2)).getId();
+            batch.add(new Response(current.getId(), choice, voters[(int) (n % VOTERS)]));
+        }
+        return responseDAO.createResponses(batch);
+    }
+
+    // A fresh two-choice poll once every voter has voted in the current one
+    private synchronized Poll pollFor(long generation) throws SQLException {
+        if (generation != pollGeneration) {
+            poll = pollDAO.createPoll(ownerId, "Benchmark question", BenchmarkDatabase.choiceTexts(2));
+            pollGeneration = generation;
+        }
+        return poll;
+    }
+}
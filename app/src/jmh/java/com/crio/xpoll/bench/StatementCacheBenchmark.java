@@ -0,0 +1,112 @@
+package com.crio.xpoll.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.crio.xpoll.dao.PollDAO;
+import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.Response;
+import com.crio.xpoll.util.DatabaseConnection;
+
+/**
+ * Client-side cost of a vote with and without statement caching. Each mode gets its own pool:
+ * {@code none} has no statement cache and the driver defaults, {@code pool} adds the per-connection
+ * statement cache, and {@code pool+driver} also turns on the driver settings from application.properties.
+ * Besides latency, {@code cpuNanosPerVote} reports the benchmark thread's CPU time per vote.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(1)
+public class StatementCacheBenchmark {
+
+    private static final int VOTERS = 50_000;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Param({ "none", "pool", "pool+driver" })
+    public String mode;
+
+    private PollDAO pollDAO;
+    private ResponseDAO responseDAO;
+    private int ownerId;
+    private int[] voters;
+    private Poll poll;
+    private long sequence;
+
+    /**
+     * CPU time of the benchmark thread, averaged per vote over the iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class CpuCounters {
+        public double cpuNanosPerVote;
+        private long cpuNanos;
+        private long votes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            cpuNanosPerVote = 0;
+            cpuNanos = 0;
+            votes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() throws SQLException {
+        BenchmarkDatabase.connect();
+
+        Properties properties = BenchmarkDatabase.properties();
+        if (!mode.contains("driver")) {
+            properties.stringPropertyNames().stream()
+                    .filter(key -> key.startsWith("db.driver."))
+                    .forEach(properties::remove);
+        }
+        properties.setProperty("db.pool.statementCacheSize", mode.equals("none") ? "0" : "64");
+        DatabaseConnection db = DatabaseConnection.create(properties.getProperty("db.url"),
+                properties.getProperty("db.username"), properties.getProperty("db.password"),
+                properties.getProperty("jdbc.driverClassName"), properties, null);
+
+        pollDAO = new PollDAO(db);
+        responseDAO = new ResponseDAO(db);
+        ownerId = new UserDAO(db).createUser("bench-owner-" + System.nanoTime(), "password").getUserId();
+        voters = BenchmarkDatabase.seedUsers(db, VOTERS);
+    }
+
+    @Benchmark
+    public Response createResponse(CpuCounters counters) throws SQLException {
+        long n = sequence++;
+        if (n % VOTERS == 0) {
+            poll = pollDAO.createPoll(ownerId, "Benchmark question", BenchmarkDatabase.choiceTexts(2));
+        }
+        long cpuStart = THREADS.getCurrentThreadCpuTime();
+        Response response = responseDAO.createResponse(poll.getId(), poll.getChoices().get((int) (n & 1)).getId(),
+                voters[(int) (n % VOTERS)]);
+        counters.cpuNanos += THREADS.getCurrentThreadCpuTime() - cpuStart;
+        counters.votes++;
+        counters.cpuNanosPerVote = (double) counters.cpuNanos / counters.votes;
+        return response;
+    }
+}
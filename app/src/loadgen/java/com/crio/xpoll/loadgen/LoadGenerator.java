@@ -0,0 +1,383 @@
+package com.crio.xpoll.loadgen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.crio.xpoll.dao.PollDAO;
+import com.crio.xpoll.dao.ResponseBatchWriter;
+import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.metrics.Histogram;
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.util.DatabaseConnection;
+import com.crio.xpoll.util.DatabaseSetup;
+import com.crio.xpoll.util.LruCache;
+import com.crio.xpoll.util.ShardRouter;
+
+/**
+ * Replays production-shaped traffic against the DAO layer: many poll reads, periodic summary
+ * refreshes and votes concentrated on a few hot polls, optionally in bursts.
+ *
+ * <p>Load is open-loop: operations arrive as a Poisson process at the target rate, whether or not
+ * earlier ones have finished, and wait in the worker queue when the workers are busy. Latency is
+ * measured from each operation's scheduled arrival, so time spent queued behind a stall is counted
+ * instead of hidden (coordinated-omission correction); the service time, measured from when a worker
+ * picked the operation up, is reported next to it.
+ *
+ * <p>Runs against the database in application.properties, which it migrates but does not reset.
+ * Every run creates its own users and polls. Usage:
+ * {@code ./gradlew loadgen -PloadgenArgs="--rate=5000 --votes=0.3 --zipf=1.1 --duration=120"}.
+ */
+public final class LoadGenerator {
+
+    private static final int SEED_CHUNK = 1_000;
+
+    private enum Operation {
+        GET_POLL, SUMMARY, VOTE
+    }
+
+    /**
+     * The command-line settings, each given as {@code --name=value}.
+     */
+    static final class Options {
+        final int polls;
+        final int choices;
+        final int users;
+        final double zipf;
+        final double rate;
+        final double votes;
+        final double summaries;
+        final int threads;
+        final int duration;
+        final int warmup;
+        final double burstFactor;
+        final int burstEvery;
+        final int burstSeconds;
+        final int reportEvery;
+        final boolean writeBehind;
+        final long seed;
+
+        private Options(Properties values) {
+            polls = Integer.parseInt(take(values, "polls", "200"));
+            choices = Integer.parseInt(take(values, "choices", "4"));
+            users = Integer.parseInt(take(values, "users", "100000"));
+            zipf = Double.parseDouble(take(values, "zipf", "0.99"));
+            rate = Double.parseDouble(take(values, "rate", "2000"));
+            votes = Double.parseDouble(take(values, "votes", "0.2"));
+            summaries = Double.parseDouble(take(values, "summaries", "0.2"));
+            threads = Integer.parseInt(take(values, "threads", "64"));
+            duration = Integer.parseInt(take(values, "duration", "60"));
+            warmup = Integer.parseInt(take(values, "warmup", "10"));
+            // Every burstEvery seconds the vote rate is multiplied by burstFactor for burstSeconds
+            burstFactor = Double.parseDouble(take(values, "burstFactor", "1"));
+            burstEvery = Integer.parseInt(take(values, "burstEvery", "30"));
+            burstSeconds = Integer.parseInt(take(values, "burstSeconds", "5"));
+            reportEvery = Integer.parseInt(take(values, "reportEvery", "10"));
+            // Votes through a ResponseBatchWriter instead of one insert each
+            writeBehind = Boolean.parseBoolean(take(values, "writeBehind", "false"));
+            seed = Long.parseLong(take(values, "seed", "42"));
+
+            if (!values.isEmpty()) {
+                throw new IllegalArgumentException("Unknown option --" + values.keySet().iterator().next());
+            }
+            if (votes + summaries > 1) {
+                throw new IllegalArgumentException("--votes plus --summaries must not exceed 1");
+            }
+        }
+
+        static Options parse(String[] args) {
+            Properties values = new Properties();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (!arg.startsWith("--") || eq < 0) {
+                    throw new IllegalArgumentException("Expected --name=value but got " + arg);
+                }
+                values.setProperty(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+            return new Options(values);
+        }
+
+        private static String take(Properties values, String name, String defaultValue) {
+            Object value = values.remove(name);
+            return value == null ? defaultValue : (String) value;
+        }
+    }
+
+    private final Options options;
+    private final UserDAO userDAO;
+    private final PollDAO pollDAO;
+    private final ResponseDAO responseDAO;
+    private final DatabaseConnection db;
+
+    private final Histogram[] latency = newHistograms();
+    private final Histogram[] serviceTime = newHistograms();
+    private final LongAdder[] errors = newAdders();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder exhaustedVotes = new LongAdder();
+
+    private Poll[] polls;
+    private int[] voters;
+    private int[] votesCast;
+    private ResponseBatchWriter writer;
+
+    private LoadGenerator(Options options, DatabaseConnection db, UserDAO userDAO, PollDAO pollDAO, ResponseDAO responseDAO) {
+        this.options = options;
+        this.db = db;
+        this.userDAO = userDAO;
+        this.pollDAO = pollDAO;
+        this.responseDAO = responseDAO;
+    }
+
+    public static void main(String[] args) throws IOException, SQLException, InterruptedException {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Options: --polls --choices --users --zipf --rate --votes --summaries --threads --duration"
+                    + " --warmup --burstFactor --burstEvery --burstSeconds --reportEvery --writeBehind --seed");
+            System.exit(2);
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream input = LoadGenerator.class.getClassLoader().getResourceAsStream("application.properties")) {
+            if (input == null) {
+                throw new IllegalStateException("application.properties not found on the classpath");
+            }
+            properties.load(input);
+        }
+        DatabaseConnection db = DatabaseConnection.getInstance(properties);
+        ShardRouter router = ShardRouter.fromProperties(db, properties);
+        DatabaseSetup.migrate(db);
+        DatabaseSetup.migrateShards(router);
+
+        PollDAO pollDAO = new PollDAO(db, new LruCache<>(PollDAO.DEFAULT_CACHE_SIZE, PollDAO.DEFAULT_CACHE_TTL_MILLIS), router);
+        LoadGenerator generator = new LoadGenerator(options, db, new UserDAO(db), pollDAO, new ResponseDAO(router));
+        generator.seed();
+        generator.run();
+        System.exit(0);
+    }
+
+    private void seed() throws SQLException {
+        long start = System.currentTimeMillis();
+        voters = seedUsers(options.users);
+        int ownerId = userDAO.createUser("loadgen-owner-" + System.nanoTime(), "password").getUserId();
+        List<String> choiceTexts = new ArrayList<>(options.choices);
+        for (int i = 1; i <= options.choices; i++) {
+            choiceTexts.add("Option " + i);
+        }
+        polls = new Poll[options.polls];
+        for (int i = 0; i < polls.length; i++) {
+            polls[i] = pollDAO.createPoll(ownerId, "Load test poll " + (i + 1), choiceTexts);
+        }
+        votesCast = new int[polls.length];
+        System.out.printf("Seeded %,d users and %,d polls in %.1f s%n", voters.length, polls.length,
+                (System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    private void run() throws InterruptedException {
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(options.threads, options.threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads("loadgen-worker"));
+        if (options.writeBehind) {
+            writer = new ResponseBatchWriter(responseDAO);
+        }
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(daemonThreads("loadgen-report"));
+        long[] lastCompleted = { 0 };
+        reporter.scheduleAtFixedRate(() -> {
+            long done = completed.sum();
+            System.out.printf("%,10.0f ops/s, %,d queued%n", (done - lastCompleted[0]) / (double) options.reportEvery,
+                    workers.getQueue().size());
+            lastCompleted[0] = done;
+        }, options.reportEvery, options.reportEvery, TimeUnit.SECONDS);
+
+        System.out.printf("Running %,.0f ops/s for %d s after %d s of warmup (%.0f%% votes, %.0f%% summaries, zipf %.2f)%n",
+                options.rate, options.duration, options.warmup, options.votes * 100, options.summaries * 100, options.zipf);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(options.warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(options.duration);
+        dispatch(workers, start, measureFrom, end);
+
+        workers.shutdown();
+        if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+            System.out.println("Workers did not drain within 60 s; the results cover the operations that finished.");
+        }
+        reporter.shutdownNow();
+        if (writer != null) {
+            writer.close();
+        }
+        report(TimeUnit.NANOSECONDS.toSeconds(end - measureFrom));
+    }
+
+    /**
+     * Schedules operations as a Poisson process until {@code end}. Reads and votes arrive independently;
+     * during a burst the vote rate is multiplied by the burst factor.
+     */
+    private void dispatch(ThreadPoolExecutor workers, long start, long measureFrom, long end) {
+        Random random = new Random(options.seed);
+        ZipfianGenerator popularity = new ZipfianGenerator(polls.length, options.zipf);
+        double voteRate = options.rate * options.votes;
+        double summaryRate = options.rate * options.summaries;
+        double readRate = options.rate - voteRate - summaryRate;
+        long burstEveryNanos = TimeUnit.SECONDS.toNanos(options.burstEvery);
+        long burstNanos = TimeUnit.SECONDS.toNanos(options.burstSeconds);
+
+        long next = start;
+        while (next < end) {
+            long now = System.nanoTime();
+            if (next > now) {
+                LockSupport.parkNanos(next - now);
+            }
+            boolean burst = options.burstFactor != 1.0 && (next - start) % burstEveryNanos < burstNanos;
+            double votesNow = burst ? voteRate * options.burstFactor : voteRate;
+            double total = readRate + summaryRate + votesNow;
+
+            double pick = random.nextDouble() * total;
+            Operation op = pick < votesNow ? Operation.VOTE
+                    : pick < votesNow + summaryRate ? Operation.SUMMARY : Operation.GET_POLL;
+            int rank = popularity.next(random);
+            int choice = random.nextInt(options.choices);
+            long intended = next;
+            boolean measured = intended >= measureFrom;
+            // Each vote gets the next user who has not voted in the poll yet
+            int voter = op == Operation.VOTE ? votesCast[rank]++ : -1;
+            if (voter >= voters.length) {
+                exhaustedVotes.increment();
+            } else {
+                workers.execute(() -> execute(op, rank, choice, voter, intended, measured));
+            }
+
+            // Exponential gaps make arrivals a Poisson process at the current total rate
+            next += (long) (-Math.log(1 - random.nextDouble()) / total * 1e9);
+        }
+    }
+
+    private void execute(Operation op, int rank, int choice, int voter, long intended, boolean measured) {
+        long started = System.nanoTime();
+        try {
+            Poll poll = polls[rank];
+            switch (op) {
+                case GET_POLL:
+                    pollDAO.getPoll(poll.getId());
+                    break;
+                case SUMMARY:
+                    pollDAO.getPollSummaries(poll.getId());
+                    break;
+                case VOTE:
+                    int choiceId = poll.getChoices().get(choice).getId();
+                    if (writer != null) {
+                        writer.submit(poll.getId(), choiceId, voters[voter]).join();
+                    } else {
+                        responseDAO.createResponse(poll.getId(), choiceId, voters[voter]);
+                    }
+                    break;
+            }
+        } catch (SQLException | CompletionException e) {
+            if (measured) {
+                errors[op.ordinal()].increment();
+            }
+        } finally {
+            long finished = System.nanoTime();
+            completed.increment();
+            if (measured) {
+                latency[op.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(finished - intended));
+                serviceTime[op.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(finished - started));
+            }
+        }
+    }
+
+    private void report(long seconds) {
+        System.out.println();
+        System.out.println("Latency from scheduled arrival, in ms (service time from pickup in the last column):");
+        System.out.printf("%-9s %10s %8s %10s %9s %9s %9s %9s %12s%n",
+                "op", "count", "errors", "ops/s", "p50", "p99", "p99.9", "max", "service p99");
+        for (Operation op : Operation.values()) {
+            Histogram h = latency[op.ordinal()];
+            System.out.printf("%-9s %,10d %,8d %,10.0f %9.2f %9.2f %9.2f %9.2f %12.2f%n",
+                    op.name().toLowerCase().replace('_', '-'), h.getCount(), errors[op.ordinal()].sum(),
+                    h.getCount() / (double) Math.max(1, seconds), millis(h.getValueAtPercentile(50)),
+                    millis(h.getValueAtPercentile(99)), millis(h.getValueAtPercentile(99.9)), millis(h.getMax()),
+                    millis(serviceTime[op.ordinal()].getValueAtPercentile(99)));
+        }
+        if (exhaustedVotes.sum() > 0) {
+            System.out.printf("%,d votes were skipped because every user had voted in their poll; raise --users.%n",
+                    exhaustedVotes.sum());
+        }
+    }
+
+    private int[] seedUsers(int count) throws SQLException {
+        int[] ids = new int[count];
+        String prefix = "loadgen-" + System.nanoTime() + "-";
+        int created = 0;
+        try (Connection conn = db.getConnection()) {
+            while (created < count) {
+                int chunk = Math.min(SEED_CHUNK, count - created);
+                StringBuilder sql = new StringBuilder("INSERT INTO users (username, password) VALUES ");
+                for (int i = 0; i < chunk; i++) {
+                    sql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString(), PreparedStatement.RETURN_GENERATED_KEYS)) {
+                    int param = 1;
+                    for (int i = 0; i < chunk; i++) {
+                        stmt.setString(param++, prefix + (created + i));
+                        stmt.setString(param++, "password");
+                    }
+                    stmt.executeUpdate();
+                    try (ResultSet keys = stmt.getGeneratedKeys()) {
+                        while (keys.next()) {
+                            ids[created++] = keys.getInt(1);
+                        }
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static Histogram[] newHistograms() {
+        Histogram[] histograms = new Histogram[Operation.values().length];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new Histogram();
+        }
+        return histograms;
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[Operation.values().length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
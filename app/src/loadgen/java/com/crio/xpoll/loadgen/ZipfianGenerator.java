@@ -0,0 +1,39 @@
+package com.crio.xpoll.loadgen;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Draws ranks in {@code [0, items)} with Zipfian popularity: rank 0 is the most popular and the
+ * probability of rank {@code k} is proportional to {@code 1 / (k + 1)^exponent}. The cumulative
+ * distribution is precomputed, so a draw is a binary search and any exponent is exact.
+ */
+final class ZipfianGenerator {
+
+    private final double[] cumulative;
+
+    /**
+     * @param items    The number of ranks.
+     * @param exponent The skew: 0 is uniform, around 1 is typical for popularity, higher is steeper.
+     */
+    ZipfianGenerator(int items, double exponent) {
+        if (items < 1) {
+            throw new IllegalArgumentException("items must be positive");
+        }
+        cumulative = new double[items];
+        double sum = 0;
+        for (int i = 0; i < items; i++) {
+            sum += 1 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < items; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    int next(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
@@ -5,23 +5,50 @@ package com.crio.xpoll;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
 
+import com.crio.xpoll.api.ApiServer;
+import com.crio.xpoll.batch.BatchRunner;
 import com.crio.xpoll.dao.PollDAO;
 import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.dao.ResponseExporter;
+import com.crio.xpoll.dao.ResponseImporter;
 import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.dao.VoteGuard;
+import com.crio.xpoll.dao.VoteTally;
+import com.crio.xpoll.live.LiveResultsPublisher;
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MetricsReporter;
 import com.crio.xpoll.model.Choice;
 import com.crio.xpoll.model.Poll;
-import com.crio.xpoll.model.PollSummary;
+import com.crio.xpoll.model.PollResults;
 import com.crio.xpoll.model.User;
+import com.crio.xpoll.trending.TrendingPoll;
+import com.crio.xpoll.trending.TrendingService;
+import com.crio.xpoll.util.DaoExecutor;
 import com.crio.xpoll.util.DatabaseConnection;
 import com.crio.xpoll.util.DatabaseSetup;
+import com.crio.xpoll.util.LruCache;
+import com.crio.xpoll.util.ShardRouter;
 
 public class App {
 
@@ -32,9 +59,13 @@ public class App {
 
     private static Scanner scanner = new Scanner(System.in);
     private static DatabaseConnection dbConnection;
+    private static ShardRouter shardRouter;
     private static UserDAO userDAO;
     private static PollDAO pollDAO;
     private static ResponseDAO responseDAO;
+    private static VoteTally tally;
+    private static LiveResultsPublisher liveResults;
+    private static TrendingService trending;
 
     public String getGreeting() {
         return "Welcome to xPoll!";
@@ -53,25 +84,72 @@ public class App {
             // Load properties file
             properties.load(input);
 
-            // Get the property values
-            String url = properties.getProperty("db.url");
-            String username = properties.getProperty("db.username");
-            String password = properties.getProperty("db.password");
-            String driverClassName = properties.getProperty("jdbc.driverClassName");
+            // Initialize the pooled database connection from the db.* properties
+            dbConnection = DatabaseConnection.getInstance(properties);
+            userDAO = new UserDAO(dbConnection, new LruCache<>(
+                    Integer.parseInt(properties.getProperty("cache.user.maxSize", String.valueOf(UserDAO.DEFAULT_CACHE_SIZE))),
+                    Long.parseLong(properties.getProperty("cache.user.ttlMillis", String.valueOf(UserDAO.DEFAULT_CACHE_TTL_MILLIS)))));
+            shardRouter = ShardRouter.fromProperties(dbConnection, properties);
+            // In fast mode vote counters live in memory and are checkpointed to choice_counts
+            tally = "fast".equalsIgnoreCase(properties.getProperty("tally.mode")) ? VoteTally.fromProperties(shardRouter, properties) : null;
+            pollDAO = new PollDAO(dbConnection, new LruCache<>(
+                    Integer.parseInt(properties.getProperty("cache.poll.maxSize", String.valueOf(PollDAO.DEFAULT_CACHE_SIZE))),
+                    Long.parseLong(properties.getProperty("cache.poll.ttlMillis", String.valueOf(PollDAO.DEFAULT_CACHE_TTL_MILLIS)))),
+                    shardRouter, tally);
+            VoteGuard voteGuard = Boolean.parseBoolean(properties.getProperty("vote.onePerUser"))
+                    ? VoteGuard.fromProperties(shardRouter, properties) : null;
+            responseDAO = new ResponseDAO(shardRouter, tally, voteGuard);
 
-            // Initialize database connection
-            dbConnection = DatabaseConnection.getInstance(url, username, password, driverClassName);
-            userDAO = new UserDAO(dbConnection);
-            pollDAO = new PollDAO(dbConnection);
-            responseDAO = new ResponseDAO(dbConnection);
+            // Live results: votes are pushed to subscribers instead of every viewer polling the database
+            liveResults = new LiveResultsPublisher(pollId -> pollDAO.getChoiceCounts(pollId, null),
+                    Long.parseLong(properties.getProperty("live.publishIntervalMillis",
+                            String.valueOf(LiveResultsPublisher.DEFAULT_PUBLISH_INTERVAL_MILLIS))));
+            responseDAO.addListener(liveResults);
+
+            // Most-voted polls of the last minute, hour and day, counted from committed votes
+            trending = TrendingService.fromProperties(properties);
+            responseDAO.addListener(trending);
+
+            // Optionally dump the per-method DAO metrics on a schedule (they are always available over JMX)
+            long reportInterval = Long.parseLong(properties.getProperty("metrics.report.intervalSeconds", "0"));
+            if (reportInterval > 0) {
+                new MetricsReporter(DaoMetrics.getInstance(), System.err,
+                        "json".equalsIgnoreCase(properties.getProperty("metrics.report.format")), reportInterval);
+            }
 
         } catch (IOException e) {
             e.printStackTrace();
             return;
         }
 
-        // Setup the database
-        DatabaseSetup.executeSQLScript(dbConnection);
+        // Bring the schema up to date, keeping existing data
+        try {
+            DatabaseSetup.migrate(dbConnection);
+            DatabaseSetup.migrateShards(shardRouter);
+        } catch (SQLException e) {
+            System.out.println(RED + "Could not migrate the database schema: " + e.getMessage() + RESET);
+            return;
+        }
+
+        if (tally != null) {
+            try {
+                tally.start();
+            } catch (SQLException e) {
+                System.out.println(RED + "Could not load the vote tally: " + e.getMessage() + RESET);
+                return;
+            }
+        }
+
+        // Commands run once the schema is current, then exit
+        if (args.length > 0) {
+            runCommand(args);
+            return;
+        }
+
+        int httpPort = Integer.parseInt(properties.getProperty("http.port", "0"));
+        if (httpPort > 0) {
+            startHttpServer(httpPort);
+        }
 
         while (true) {
             System.out.println(CYAN);
@@ -81,7 +159,8 @@ public class App {
             System.out.println("3. Respond to a poll");
             System.out.println("4. View poll summary");
             System.out.println("5. Close a poll");
-            System.out.println("6. Exit");
+            System.out.println("6. View trending polls");
+            System.out.println("7. Exit");
             System.out.println(RESET);
 
             int choice = Integer.parseInt(scanner.nextLine());
@@ -104,6 +183,9 @@ public class App {
                         closePoll();
                         break;
                     case 6:
+                        viewTrendingPolls();
+                        break;
+                    case 7:
                         System.exit(0);
                         break;
                     default:
@@ -120,6 +202,118 @@ public class App {
         }
     }
 
+    private static void runCommand(String[] args) {
+        try {
+            switch (args[0]) {
+                case "--rebuild-counts":
+                    if (args.length > 1) {
+                        responseDAO.reconcileChoiceCounts(Integer.parseInt(args[1]));
+                    } else {
+                        responseDAO.reconcileChoiceCounts();
+                    }
+                    System.out.println(GREEN + "Choice counts rebuilt from responses." + RESET);
+                    break;
+                case "--import-responses":
+                    importResponses(args);
+                    break;
+                case "--export-responses":
+                    exportResponses(args);
+                    break;
+                case "--batch":
+                    runBatch(args);
+                    break;
+                default:
+                    System.out.println(RED + "Unknown command: " + args[0] + RESET);
+                    System.out.println("Usage: --rebuild-counts [pollId]");
+                    System.out.println("       --import-responses <file.csv|file.ndjson> [chunkSize] [--skip-duplicates]");
+                    System.out.println("       --export-responses <file.csv|file.ndjson|-> [pollId] [--from <timestamp>] [--to <timestamp>] [--ndjson]");
+                    System.out.println("       --batch <script|-> [batchSize]");
+            }
+        } catch (IOException e) {
+            System.out.println(RED + args[0].substring(2) + " failed: " + e.getMessage() + RESET);
+        } catch (SQLException e) {
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw);
+            e.printStackTrace(pw);
+            System.out.println(RED + sw + RESET);
+        }
+    }
+
+    private static void importResponses(String[] args) throws SQLException, IOException {
+        List<String> options = Arrays.asList(args).subList(1, args.length);
+        boolean skipDuplicates = options.contains("--skip-duplicates");
+        int chunkSize = ResponseImporter.DEFAULT_CHUNK_SIZE;
+        if (args.length > 2 && !args[2].startsWith("--")) {
+            chunkSize = Integer.parseInt(args[2]);
+        }
+
+        ResponseImporter importer = new ResponseImporter(responseDAO, chunkSize, skipDuplicates);
+        ResponseImporter.Result result = importer.importFile(Paths.get(args[1]), (rows, millis) ->
+                System.out.printf("%,d rows imported (%,.0f rows/s)%n", rows, rows * 1000.0 / Math.max(1, millis)));
+
+        System.out.println(GREEN + String.format("Imported %,d responses into %d polls in %.1f s.",
+                result.getRowsImported(), result.getPollsAffected(), result.getElapsedMillis() / 1000.0) + RESET);
+    }
+
+    private static void exportResponses(String[] args) throws SQLException, IOException {
+        Integer pollId = null;
+        Timestamp from = null;
+        Timestamp to = null;
+        for (int i = 2; i < args.length; i++) {
+            if ("--from".equals(args[i])) {
+                from = Timestamp.valueOf(args[++i].replace('T', ' '));
+            } else if ("--to".equals(args[i])) {
+                to = Timestamp.valueOf(args[++i].replace('T', ' '));
+            } else if (!args[i].startsWith("--")) {
+                pollId = Integer.parseInt(args[i]);
+            }
+        }
+
+        ResponseExporter exporter = new ResponseExporter(responseDAO);
+        ResponseExporter.Result result;
+        if ("-".equals(args[1])) {
+            // Rows go to stdout, so progress and the summary go to stderr
+            ResponseExporter.Format format = Arrays.asList(args).contains("--ndjson")
+                    ? ResponseExporter.Format.NDJSON : ResponseExporter.Format.CSV;
+            WritableByteChannel out = Channels.newChannel(System.out);
+            result = exporter.export(pollId, from, to, format, out, exportProgress(System.err));
+            System.out.flush();
+            System.err.println(String.format("Exported %,d responses in %.1f s.",
+                    result.getRowsExported(), result.getElapsedMillis() / 1000.0));
+        } else {
+            Path file = Paths.get(args[1]);
+            result = exporter.exportFile(pollId, from, to, file, exportProgress(System.out));
+            System.out.println(GREEN + String.format("Exported %,d responses to %s in %.1f s.",
+                    result.getRowsExported(), file, result.getElapsedMillis() / 1000.0) + RESET);
+        }
+    }
+
+    private static ResponseExporter.ProgressListener exportProgress(PrintStream out) {
+        return (rows, millis) -> out.printf("%,d rows exported (%,.0f rows/s)%n", rows, rows * 1000.0 / Math.max(1, millis));
+    }
+
+    private static void runBatch(String[] args) throws IOException {
+        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : BatchRunner.DEFAULT_BATCH_SIZE;
+        BatchRunner.Result result;
+        try (DaoExecutor executor = DaoExecutor.forConnection(dbConnection);
+             Reader script = "-".equals(args[1])
+                     ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                     : Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)) {
+            result = new BatchRunner(userDAO, pollDAO, responseDAO, executor, batchSize, System.out).run(script);
+        }
+
+        double seconds = Math.max(1, result.getElapsedMillis()) / 1000.0;
+        System.out.println(GREEN + String.format("Ran %,d operations in %.1f s (%,.0f ops/s): %,d users, %,d polls, "
+                + "%,d votes in %,d batches (%,.0f votes/s), %,d summaries, %,d polls closed, over %,d stages.",
+                result.getOperations(), seconds, result.getOperations() / seconds, result.getUsersCreated(),
+                result.getPollsCreated(), result.getVotesRecorded(), result.getVoteBatches(),
+                result.getVotesRecorded() / seconds, result.getSummariesShown(), result.getPollsClosed(),
+                result.getStages()) + RESET);
+        if (result.getFailed() > 0) {
+            System.out.println(RED + String.format("%,d operations failed.", result.getFailed()) + RESET);
+        }
+    }
+
     private static void createUser() throws SQLException {
         System.out.println("Enter username:");
         String username = scanner.nextLine();
@@ -172,7 +366,17 @@ public class App {
         System.out.println("Enter user ID:");
         int userId = Integer.parseInt(scanner.nextLine());
 
-        responseDAO.createResponse(pollId, choiceId, userId);
+        if (userDAO.getUserById(userId) == null) {
+            System.out.println(RED + "No user found with ID: " + userId + RESET);
+            return;
+        }
+
+        try {
+            responseDAO.createResponse(pollId, choiceId, userId);
+        } catch (SQLIntegrityConstraintViolationException e) {
+            System.out.println(RED + "User " + userId + " has already responded to this poll." + RESET);
+            return;
+        }
         System.out.println(GREEN);
         System.out.println("Response recorded.");
     }
@@ -186,14 +390,38 @@ public class App {
         System.out.println("Poll closed.");
     }
 
+    private static void startHttpServer(int port) {
+        try {
+            ApiServer server = new ApiServer(new InetSocketAddress(port), userDAO, pollDAO, responseDAO, liveResults);
+            server.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+            System.out.println("HTTP API at http://localhost:" + port + "/api/polls, live results at /polls/{pollId}/events");
+        } catch (IOException e) {
+            System.out.println(RED + "Could not start the HTTP server: " + e.getMessage() + RESET);
+        }
+    }
+
     private static void viewPollSummary() throws SQLException {
         System.out.println("Enter poll ID:");
         int pollId = Integer.parseInt(scanner.nextLine());
 
-        List<PollSummary> summaries = pollDAO.getPollSummaries(pollId);
+        PollResults results = pollDAO.getPollResults(pollId, null);
         System.out.println(GREEN);
-        for (PollSummary summary : summaries) {
-            System.out.println(summary.getQuestion() + ": " + summary.getChoiceText() + " - " + summary.getResponseCount() + " responses");
+        for (int i = 0; i < results.size(); i++) {
+            System.out.println(results.getQuestion() + ": " + results.getChoiceText(i) + " - " + results.getCount(i) + " responses");
+        }
+    }
+
+    private static void viewTrendingPolls() {
+        System.out.println("Enter the number of polls to show:");
+        int k = Integer.parseInt(scanner.nextLine());
+
+        System.out.println(GREEN);
+        for (TrendingService.Window window : TrendingService.Window.values()) {
+            System.out.println(window + ":");
+            for (TrendingPoll poll : trending.getTopPolls(window, k)) {
+                System.out.println("  " + poll);
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,69 @@
+package com.crio.xpoll.api;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+
+import com.crio.xpoll.dao.PollDAO;
+import com.crio.xpoll.dao.ResponseBatchWriter;
+import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.live.LiveResultsPublisher;
+import com.crio.xpoll.live.PollEventsHandler;
+import com.crio.xpoll.util.DaoExecutor;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The HTTP front end: the JSON API of {@link PollApiHandler} at {@code /api/polls} and the live
+ * results of {@link PollEventsHandler} at {@code /polls/{id}/events}, on the JDK's built-in server.
+ * Each request runs on its own virtual thread where the runtime has them, so a handler blocked on
+ * JDBC or on its vote's batch costs no platform thread; connections are kept alive between requests.
+ */
+public class ApiServer implements AutoCloseable {
+
+    // Pending connections the OS may queue while the accept loop catches up with a burst
+    public static final int DEFAULT_BACKLOG = 1024;
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ResponseBatchWriter voteWriter;
+
+    /**
+     * Creates a server bound to the address; call {@link #start()} to accept requests.
+     *
+     * @param liveResults The publisher behind the event streams, or null to serve the API only.
+     * @throws IOException If the address cannot be bound.
+     */
+    public ApiServer(InetSocketAddress address, UserDAO userDAO, PollDAO pollDAO, ResponseDAO responseDAO,
+            LiveResultsPublisher liveResults) throws IOException {
+        this.server = HttpServer.create(address, DEFAULT_BACKLOG);
+        this.voteWriter = new ResponseBatchWriter(responseDAO);
+        this.executor = DaoExecutor.newThreadPerTaskExecutor("xpoll-http");
+        server.createContext("/api/polls", new PollApiHandler(userDAO, pollDAO, voteWriter));
+        if (liveResults != null) {
+            server.createContext("/polls/", new PollEventsHandler(liveResults));
+        }
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the port the server listens on, e.g. the one picked for port 0.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops accepting connections, then flushes the votes already queued.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        voteWriter.close();
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,314 @@
+package com.crio.xpoll.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.crio.xpoll.dao.PollDAO;
+import com.crio.xpoll.dao.ResponseBatchWriter;
+import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.model.Choice;
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.PollResults;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * JSON endpoints for polls, mounted at {@code /api/polls}:
+ *
+ * <pre>
+ * POST /api/polls                {"userId":1,"question":"...","choices":["...","..."]}  201 with the poll
+ * GET  /api/polls/{id}           200 with the poll
+ * POST /api/polls/{id}/votes     {"choiceId":2,"userId":3}                               201
+ * GET  /api/polls/{id}/summary   200 with the count of every choice; ?userId= reads that user's own votes
+ * POST /api/polls/{id}/close     204
+ * </pre>
+ *
+ * Errors are {@code {"error":"..."}} with 400, 404, 405, 409, 413, 500 or 503, the latter when a vote
+ * is not committed within {@value #VOTE_TIMEOUT_SECONDS} seconds. Votes go through a
+ * {@link ResponseBatchWriter}, so concurrent requests share multi-row inserts; a request returns once its
+ * vote is committed. Every response has a fixed Content-Length, so clients can keep their connections open.
+ */
+class PollApiHandler implements HttpHandler {
+
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    // How long a vote request waits for its batch to commit
+    private static final long VOTE_TIMEOUT_SECONDS = 10;
+
+    // Bodies that never change are encoded once
+    private static final byte[] VOTE_RECORDED = ascii("{\"recorded\":true}");
+    private static final byte[] NOT_FOUND = ascii("{\"error\":\"Not found\"}");
+    private static final byte[] POLL_NOT_FOUND = ascii("{\"error\":\"Poll not found\"}");
+    private static final byte[] USER_NOT_FOUND = ascii("{\"error\":\"User not found\"}");
+    private static final byte[] POLL_CLOSED = ascii("{\"error\":\"Poll is closed\"}");
+    private static final byte[] ALREADY_VOTED = ascii("{\"error\":\"User has already voted in this poll\"}");
+    private static final byte[] METHOD_NOT_ALLOWED = ascii("{\"error\":\"Method not allowed\"}");
+    private static final byte[] BODY_TOO_LARGE = ascii("{\"error\":\"Request body too large\"}");
+    private static final byte[] VOTE_TIMED_OUT = ascii("{\"error\":\"Timed out waiting for the vote to be recorded\"}");
+    private static final byte[] SERVER_ERROR = ascii("{\"error\":\"Database error\"}");
+    private static final byte[] INTERNAL_ERROR = ascii("{\"error\":\"Internal server error\"}");
+
+    private final UserDAO userDAO;
+    private final PollDAO pollDAO;
+    private final ResponseBatchWriter voteWriter;
+
+    PollApiHandler(UserDAO userDAO, PollDAO pollDAO, ResponseBatchWriter voteWriter) {
+        this.userDAO = userDAO;
+        this.pollDAO = pollDAO;
+        this.voteWriter = voteWriter;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String rest = exchange.getRequestURI().getPath().substring(exchange.getHttpContext().getPath().length());
+            try {
+                if (rest.isEmpty() || "/".equals(rest)) {
+                    if (allow(exchange, "POST")) {
+                        createPoll(exchange);
+                    }
+                    return;
+                }
+                // Either /{id} or /{id}/{action}
+                String[] segments = rest.substring(1).split("/");
+                if (!rest.startsWith("/") || segments.length > 2) {
+                    send(exchange, 404, NOT_FOUND);
+                    return;
+                }
+                int pollId;
+                try {
+                    pollId = Integer.parseInt(segments[0]);
+                } catch (NumberFormatException e) {
+                    send(exchange, 404, NOT_FOUND);
+                    return;
+                }
+                String action = segments.length == 2 ? segments[1] : "";
+                switch (action) {
+                    case "":
+                        if (allow(exchange, "GET")) {
+                            send(exchange, 200, pollJson(pollDAO.getPoll(pollId)));
+                        }
+                        break;
+                    case "votes":
+                        if (allow(exchange, "POST")) {
+                            vote(exchange, pollId);
+                        }
+                        break;
+                    case "summary":
+                        if (allow(exchange, "GET")) {
+                            summary(exchange, pollId);
+                        }
+                        break;
+                    case "close":
+                        if (allow(exchange, "POST")) {
+                            pollDAO.closePoll(pollId);
+                            send(exchange, 204, null);
+                        }
+                        break;
+                    default:
+                        send(exchange, 404, NOT_FOUND);
+                }
+            } catch (BadRequestException e) {
+                send(exchange, 400, error(e.getMessage()));
+            } catch (SQLException e) {
+                if (PollDAO.POLL_NOT_FOUND_SQL_STATE.equals(e.getSQLState())) {
+                    send(exchange, 404, POLL_NOT_FOUND);
+                } else {
+                    e.printStackTrace();
+                    send(exchange, 500, SERVER_ERROR);
+                }
+            } catch (RuntimeException e) {
+                // Any other failure still answers, unless the response was already under way
+                e.printStackTrace();
+                if (exchange.getResponseCode() == -1) {
+                    send(exchange, 500, INTERNAL_ERROR);
+                }
+            }
+        }
+    }
+
+    private void createPoll(HttpExchange exchange) throws IOException, SQLException {
+        Map<String, Object> body = readBody(exchange);
+        if (body == null) {
+            return;
+        }
+        int userId = intField(body, "userId");
+        Object question = body.get("question");
+        Object choiceList = body.get("choices");
+        if (!(question instanceof String) || ((String) question).isBlank()) {
+            throw new BadRequestException("question must be a non-empty string");
+        }
+        if (!(choiceList instanceof List) || ((List<?>) choiceList).isEmpty()) {
+            throw new BadRequestException("choices must be a non-empty array of strings");
+        }
+        List<String> choices = new ArrayList<>();
+        for (Object choice : (List<?>) choiceList) {
+            if (!(choice instanceof String)) {
+                throw new BadRequestException("choices must be a non-empty array of strings");
+            }
+            choices.add((String) choice);
+        }
+        if (userDAO.getUserById(userId) == null) {
+            send(exchange, 404, USER_NOT_FOUND);
+            return;
+        }
+        send(exchange, 201, pollJson(pollDAO.createPoll(userId, (String) question, choices)));
+    }
+
+    private void vote(HttpExchange exchange, int pollId) throws IOException, SQLException {
+        Map<String, Object> body = readBody(exchange);
+        if (body == null) {
+            return;
+        }
+        int choiceId = intField(body, "choiceId");
+        int userId = intField(body, "userId");
+
+        Poll poll = pollDAO.getPoll(pollId);
+        if (poll.isClosed()) {
+            send(exchange, 409, POLL_CLOSED);
+            return;
+        }
+        if (poll.indexOfChoice(choiceId) < 0) {
+            throw new BadRequestException("poll " + pollId + " has no choice " + choiceId);
+        }
+        if (userDAO.getUserById(userId) == null) {
+            send(exchange, 404, USER_NOT_FOUND);
+            return;
+        }
+        try {
+            voteWriter.submit(pollId, choiceId, userId).get(VOTE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLIntegrityConstraintViolationException) {
+                send(exchange, 409, ALREADY_VOTED);
+                return;
+            }
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new IllegalStateException("Recording the vote failed", e.getCause());
+        } catch (TimeoutException e) {
+            // The vote may still be written; the client can check the summary before retrying
+            send(exchange, 503, VOTE_TIMED_OUT);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, VOTE_TIMED_OUT);
+            return;
+        }
+        send(exchange, 201, VOTE_RECORDED);
+    }
+
+    private void summary(HttpExchange exchange, int pollId) throws IOException, SQLException {
+        Integer userId = null;
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null && query.startsWith("userId=")) {
+            try {
+                userId = Integer.valueOf(query.substring("userId=".length()));
+            } catch (NumberFormatException e) {
+                throw new BadRequestException("userId must be a number");
+            }
+        }
+        PollResults results = pollDAO.getPollResults(pollId, userId);
+
+        StringBuilder sb = new StringBuilder(128 + 64 * results.size());
+        sb.append("{\"pollId\":").append(results.getPollId()).append(",\"question\":");
+        Json.quote(sb, results.getQuestion()).append(",\"closed\":").append(results.isClosed()).append(",\"choices\":[");
+        for (int i = 0; i < results.size(); i++) {
+            sb.append(i == 0 ? "{\"id\":" : ",{\"id\":").append(results.getChoiceId(i)).append(",\"text\":");
+            Json.quote(sb, results.getChoiceText(i)).append(",\"count\":").append(results.getCount(i)).append('}');
+        }
+        send(exchange, 200, utf8(sb.append("]}")));
+    }
+
+    private static byte[] pollJson(Poll poll) {
+        StringBuilder sb = new StringBuilder(128 + 48 * poll.getChoices().size());
+        sb.append("{\"id\":").append(poll.getId()).append(",\"userId\":").append(poll.getUserId()).append(",\"question\":");
+        Json.quote(sb, poll.getQuestion()).append(",\"closed\":").append(poll.isClosed()).append(",\"choices\":[");
+        for (int i = 0; i < poll.getChoices().size(); i++) {
+            Choice choice = poll.getChoices().get(i);
+            sb.append(i == 0 ? "{\"id\":" : ",{\"id\":").append(choice.getId()).append(",\"text\":");
+            Json.quote(sb, choice.getChoiceText()).append('}');
+        }
+        return utf8(sb.append("]}"));
+    }
+
+    /**
+     * Reads and parses the request body, or answers 413 and returns null if it is too large.
+     */
+    private static Map<String, Object> readBody(HttpExchange exchange) throws IOException {
+        byte[] body;
+        try (InputStream in = exchange.getRequestBody()) {
+            body = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (body.length > MAX_BODY_BYTES) {
+            send(exchange, 413, BODY_TOO_LARGE);
+            return null;
+        }
+        try {
+            return Json.parseObject(new String(body, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException(e.getMessage());
+        }
+    }
+
+    private static int intField(Map<String, Object> body, String name) {
+        Object value = body.get(name);
+        if (!(value instanceof Long) || (Long) value < 1 || (Long) value > Integer.MAX_VALUE) {
+            throw new BadRequestException(name + " must be a positive integer");
+        }
+        return ((Long) value).intValue();
+    }
+
+    private static boolean allow(HttpExchange exchange, String method) throws IOException {
+        if (method.equals(exchange.getRequestMethod())) {
+            return true;
+        }
+        exchange.getResponseHeaders().set("Allow", method);
+        send(exchange, 405, METHOD_NOT_ALLOWED);
+        return false;
+    }
+
+    /**
+     * Sends the whole body with a fixed Content-Length in one write; a null body sends none.
+     */
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.flush();
+    }
+
+    private static byte[] error(String message) {
+        return utf8(Json.quote(new StringBuilder("{\"error\":"), message).append('}'));
+    }
+
+    private static byte[] utf8(CharSequence json) {
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] ascii(String json) {
+        return json.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static final class BadRequestException extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        private BadRequestException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package com.crio.xpoll.batch;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import com.crio.xpoll.dao.PollDAO;
+import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.PollResults;
+import com.crio.xpoll.model.Response;
+import com.crio.xpoll.model.User;
+import com.crio.xpoll.util.DaoExecutor;
+
+/**
+ * Runs a script of operations without the interactive menu, one operation per line:
+ *
+ * <pre>
+ * # Comments and blank lines are skipped
+ * user alice secret                               creates a user, referred to below as @alice
+ * poll lunch @alice "Where to eat?" Pizza Sushi   creates a poll, referred to below as @lunch
+ * vote @lunch #1 @alice                           votes for the poll's first choice
+ * vote 12 57 34                                   IDs work anywhere a reference does
+ * summary @lunch
+ * close @lunch
+ * </pre>
+ *
+ * <p>The script is read as a stream and cut into stages of operations that do not depend on each other:
+ * a stage ends before an operation that refers to something created in it, or that touches a poll the
+ * stage already touches, unless both are votes or both are summaries. The operations of a stage run
+ * concurrently on the {@link DaoExecutor}, with its votes grouped into multi-row inserts, so the outcome
+ * is the same as running the lines one after another. A failed line is reported and the script goes on.
+ */
+public class BatchRunner {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    // Bounds the memory a long run of votes holds before it is written
+    private static final int STAGE_BATCHES = 32;
+
+    private enum Kind {
+        USER(2, 2), POLL(4, Integer.MAX_VALUE), VOTE(3, 3), SUMMARY(1, 1), CLOSE(1, 1);
+
+        private final int minArgs;
+        private final int maxArgs;
+
+        Kind(int minArgs, int maxArgs) {
+            this.minArgs = minArgs;
+            this.maxArgs = maxArgs;
+        }
+    }
+
+    /**
+     * The outcome of a run.
+     */
+    public static final class Result {
+        private final int[] succeeded = new int[Kind.values().length];
+        private long failed;
+        private long voteBatches;
+        private long stages;
+        private long elapsedMillis;
+
+        private Result() {
+        }
+
+        public long getOperations() {
+            long operations = failed;
+            for (int count : succeeded) {
+                operations += count;
+            }
+            return operations;
+        }
+
+        public long getUsersCreated() {
+            return succeeded[Kind.USER.ordinal()];
+        }
+
+        public long getPollsCreated() {
+            return succeeded[Kind.POLL.ordinal()];
+        }
+
+        public long getVotesRecorded() {
+            return succeeded[Kind.VOTE.ordinal()];
+        }
+
+        public long getSummariesShown() {
+            return succeeded[Kind.SUMMARY.ordinal()];
+        }
+
+        public long getPollsClosed() {
+            return succeeded[Kind.CLOSE.ordinal()];
+        }
+
+        /**
+         * Returns the number of lines that could not be parsed or whose operation failed.
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getVoteBatches() {
+            return voteBatches;
+        }
+
+        public long getStages() {
+            return stages;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private final UserDAO userDAO;
+    private final PollDAO pollDAO;
+    private final ResponseDAO responseDAO;
+    private final DaoExecutor executor;
+    private final int batchSize;
+    private final PrintStream out;
+    private final Map<String, Integer> labels = new HashMap<>();
+
+    /**
+     * Constructs a BatchRunner.
+     *
+     * @param executor  The executor the operations of a stage run on; it bounds their concurrency.
+     * @param batchSize The largest number of votes written in one insert.
+     * @param out       Where created IDs, summaries and failed lines are printed.
+     */
+    public BatchRunner(UserDAO userDAO, PollDAO pollDAO, ResponseDAO responseDAO, DaoExecutor executor, int batchSize,
+            PrintStream out) {
+        this.userDAO = userDAO;
+        this.pollDAO = pollDAO;
+        this.responseDAO = responseDAO;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.out = out;
+    }
+
+    /**
+     * Runs every operation of the script. References to users and polls created by earlier calls stay valid.
+     *
+     * @throws IOException If the script cannot be read.
+     */
+    public Result run(Reader script) throws IOException {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+        BufferedReader reader = new BufferedReader(script);
+        Stage stage = new Stage();
+        String line;
+        int lineNumber = 0;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            Operation operation;
+            try {
+                operation = parse(lineNumber, trimmed);
+            } catch (IllegalArgumentException e) {
+                out.println("line " + lineNumber + ": " + e.getMessage());
+                result.failed++;
+                continue;
+            }
+            if (!stage.accepts(operation) || stage.operations.size() >= batchSize * STAGE_BATCHES) {
+                runStage(stage, result);
+                stage = new Stage();
+            }
+            stage.add(operation);
+        }
+        runStage(stage, result);
+
+        result.elapsedMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private Operation parse(int lineNumber, String line) {
+        List<String> tokens = tokenize(line);
+        Kind kind;
+        try {
+            kind = Kind.valueOf(tokens.get(0).toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown operation " + tokens.get(0));
+        }
+        List<String> args = tokens.subList(1, tokens.size());
+        if (args.size() < kind.minArgs || args.size() > kind.maxArgs) {
+            throw new IllegalArgumentException("wrong number of arguments for " + tokens.get(0));
+        }
+        switch (kind) {
+            case POLL:
+                checkReference(args.get(1));
+                break;
+            case VOTE:
+                checkReference(args.get(0));
+                if (!args.get(1).startsWith("#") || !isNumber(args.get(1).substring(1))) {
+                    checkReference(args.get(1));
+                }
+                checkReference(args.get(2));
+                break;
+            case SUMMARY:
+            case CLOSE:
+                checkReference(args.get(0));
+                break;
+            default:
+                break;
+        }
+        return new Operation(lineNumber, kind, args);
+    }
+
+    private void runStage(Stage stage, Result result) {
+        if (stage.operations.isEmpty()) {
+            return;
+        }
+        List<Operation> votes = new ArrayList<>();
+        for (Operation op : stage.operations) {
+            try {
+                switch (op.kind) {
+                    case USER:
+                        op.future = executor.submit(() -> userDAO.createUser(op.args.get(0), op.args.get(1)));
+                        break;
+                    case POLL:
+                        int ownerId = resolve(op.args.get(1));
+                        op.future = executor.submit(() -> pollDAO.createPoll(ownerId, op.args.get(2),
+                                op.args.subList(3, op.args.size())));
+                        break;
+                    case VOTE:
+                        votes.add(op);
+                        break;
+                    case SUMMARY:
+                        int summaryPollId = resolve(op.args.get(0));
+                        op.future = executor.submit(() -> pollDAO.getPollResults(summaryPollId, null));
+                        break;
+                    case CLOSE:
+                        int closePollId = resolve(op.args.get(0));
+                        op.future = executor.submit(() -> {
+                            pollDAO.closePoll(closePollId);
+                            return closePollId;
+                        });
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                op.error = e.getMessage();
+            }
+        }
+        List<CompletableFuture<Void>> voteBatches = submitVotes(votes);
+        result.voteBatches += voteBatches.size();
+
+        for (CompletableFuture<Void> batch : voteBatches) {
+            batch.join();
+        }
+        for (Operation op : stage.operations) {
+            if (op.future != null) {
+                try {
+                    op.result = op.future.join();
+                } catch (CompletionException e) {
+                    op.error = e.getCause().getMessage();
+                }
+            }
+            report(op, result);
+        }
+        result.stages++;
+    }
+
+    /**
+     * Checks the votes against their polls and writes them in batches.
+     * Votes on a missing or closed poll, or for a choice it does not have, are rejected like in the menu.
+     */
+    private List<CompletableFuture<Void>> submitVotes(List<Operation> votes) {
+        Map<Integer, CompletableFuture<Poll>> polls = new HashMap<>();
+        for (Operation vote : votes) {
+            try {
+                vote.pollId = resolve(vote.args.get(0));
+                vote.userId = resolve(vote.args.get(2));
+                polls.computeIfAbsent(vote.pollId, id -> executor.submit(() -> pollDAO.getPoll(id)));
+            } catch (IllegalArgumentException e) {
+                vote.error = e.getMessage();
+            }
+        }
+
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        List<Operation> batch = new ArrayList<>(batchSize);
+        for (Operation vote : votes) {
+            if (vote.error != null) {
+                continue;
+            }
+            try {
+                Poll poll = polls.get(vote.pollId).join();
+                if (poll.isClosed()) {
+                    vote.error = "poll " + poll.getId() + " is closed";
+                    continue;
+                }
+                vote.choiceId = resolveChoice(poll, vote.args.get(1));
+            } catch (CompletionException e) {
+                vote.error = e.getCause().getMessage();
+                continue;
+            } catch (IllegalArgumentException e) {
+                vote.error = e.getMessage();
+                continue;
+            }
+            batch.add(vote);
+            if (batch.size() == batchSize) {
+                batches.add(submitBatch(batch));
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(submitBatch(batch));
+        }
+        return batches;
+    }
+
+    private CompletableFuture<Void> submitBatch(List<Operation> batch) {
+        List<Response> responses = new ArrayList<>(batch.size());
+        for (Operation vote : batch) {
+            responses.add(new Response(vote.pollId, vote.choiceId, vote.userId));
+        }
+        return executor.<Void>submit(() -> {
+            try {
+                responseDAO.createResponses(responses);
+            } catch (SQLException e) {
+                if (!isIntegrityViolation(e)) {
+                    throw e;
+                }
+                // One repeated vote or unknown user rejects the whole insert, so the batch is retried vote by vote
+                for (Operation vote : batch) {
+                    try {
+                        responseDAO.createResponse(vote.pollId, vote.choiceId, vote.userId);
+                        vote.written = true;
+                    } catch (SQLException rejected) {
+                        if (!isIntegrityViolation(rejected)) {
+                            throw rejected;
+                        }
+                        vote.error = rejected.getMessage();
+                    }
+                }
+            }
+            return null;
+        }).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            // Votes the retry already committed or rejected keep their outcome
+            for (Operation vote : batch) {
+                if (!vote.written && vote.error == null) {
+                    vote.error = cause.getMessage();
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns whether a constraint rejected the write. A multi-row insert reports this as a
+     * {@link java.sql.BatchUpdateException} whose cause is the actual violation, so the causes are checked too.
+     */
+    private static boolean isIntegrityViolation(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLIntegrityConstraintViolationException) {
+                return true;
+            }
+            if (t instanceof SQLException) {
+                String sqlState = ((SQLException) t).getSQLState();
+                // SQLState class 23 is "integrity constraint violation"
+                if (sqlState != null && sqlState.startsWith("23")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void report(Operation op, Result result) {
+        if (op.error != null) {
+            out.println("line " + op.line + ": " + op.kind.name().toLowerCase(Locale.ROOT) + " failed: " + op.error);
+            result.failed++;
+            return;
+        }
+        switch (op.kind) {
+            case USER:
+                User user = (User) op.result;
+                labels.put(op.args.get(0), user.getUserId());
+                out.println("User " + op.args.get(0) + " created with ID: " + user.getUserId());
+                break;
+            case POLL:
+                Poll poll = (Poll) op.result;
+                labels.put(op.args.get(0), poll.getId());
+                out.println("Poll " + op.args.get(0) + " created with ID: " + poll.getId());
+                break;
+            case SUMMARY:
+                PollResults results = (PollResults) op.result;
+                for (int i = 0; i < results.size(); i++) {
+                    out.println(results.getQuestion() + ": " + results.getChoiceText(i) + " - "
+                            + results.getCount(i) + " responses");
+                }
+                break;
+            case CLOSE:
+                out.println("Poll " + op.result + " closed.");
+                break;
+            default:
+                break;
+        }
+        result.succeeded[op.kind.ordinal()]++;
+    }
+
+    /**
+     * Resolves an {@code @label} to the ID it was created with, or parses a plain ID.
+     */
+    private int resolve(String reference) {
+        if (reference.startsWith("@")) {
+            Integer id = labels.get(reference.substring(1));
+            if (id == null) {
+                throw new IllegalArgumentException("unknown reference " + reference);
+            }
+            return id;
+        }
+        return Integer.parseInt(reference);
+    }
+
+    private int resolveChoice(Poll poll, String reference) {
+        if (reference.startsWith("#")) {
+            int position = Integer.parseInt(reference.substring(1));
+            if (position < 1 || position > poll.getChoices().size()) {
+                throw new IllegalArgumentException("poll " + poll.getId() + " has no choice " + reference);
+            }
+            return poll.getChoices().get(position - 1).getId();
+        }
+        int choiceId = resolve(reference);
+        if (poll.indexOfChoice(choiceId) >= 0) {
+            return choiceId;
+        }
+        throw new IllegalArgumentException("poll " + poll.getId() + " has no choice with ID " + choiceId);
+    }
+
+    private static void checkReference(String reference) {
+        if (!(reference.startsWith("@") && reference.length() > 1) && !isNumber(reference)) {
+            throw new IllegalArgumentException("expected an ID or @reference but got " + reference);
+        }
+    }
+
+    private static boolean isNumber(String value) {
+        if (value.isEmpty() || value.length() > 9) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Splits a line at whitespace. Double quotes group words, and a backslash escapes the next character inside them.
+     */
+    static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        int length = line.length();
+        int i = 0;
+        while (i < length) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                i++;
+                continue;
+            }
+            StringBuilder token = new StringBuilder();
+            if (line.charAt(i) == '"') {
+                i++;
+                while (i < length && line.charAt(i) != '"') {
+                    if (line.charAt(i) == '\\' && i + 1 < length) {
+                        i++;
+                    }
+                    token.append(line.charAt(i++));
+                }
+                if (i == length) {
+                    throw new IllegalArgumentException("unterminated quote");
+                }
+                i++;
+            } else {
+                while (i < length && !Character.isWhitespace(line.charAt(i))) {
+                    token.append(line.charAt(i++));
+                }
+            }
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    /**
+     * Operations that can run at the same time.
+     */
+    private final class Stage {
+        private final List<Operation> operations = new ArrayList<>();
+        private final Set<String> created = new HashSet<>();
+        private final Map<String, Kind> pollsTouched = new HashMap<>();
+
+        /**
+         * Returns whether the operation is independent of everything already in the stage.
+         */
+        boolean accepts(Operation op) {
+            for (String reference : op.references()) {
+                if (reference.startsWith("@") && created.contains(reference.substring(1))) {
+                    return false;
+                }
+            }
+            if (op.kind == Kind.USER || op.kind == Kind.POLL) {
+                return !created.contains(op.args.get(0));
+            }
+            Kind other = pollsTouched.get(pollKey(op.args.get(0)));
+            return other == null || (other == op.kind && (other == Kind.VOTE || other == Kind.SUMMARY));
+        }
+
+        void add(Operation op) {
+            operations.add(op);
+            if (op.kind == Kind.USER || op.kind == Kind.POLL) {
+                created.add(op.args.get(0));
+            } else {
+                pollsTouched.put(pollKey(op.args.get(0)), op.kind);
+            }
+        }
+
+        // A label and the ID it stands for are the same poll
+        private String pollKey(String reference) {
+            if (reference.startsWith("@")) {
+                Integer id = labels.get(reference.substring(1));
+                return id != null ? String.valueOf(id) : reference;
+            }
+            return reference;
+        }
+    }
+
+    private static final class Operation {
+        private final int line;
+        private final Kind kind;
+        private final List<String> args;
+        private CompletableFuture<?> future;
+        private Object result;
+        private String error;
+        private boolean written;
+        private int pollId;
+        private int choiceId;
+        private int userId;
+
+        Operation(int line, Kind kind, List<String> args) {
+            this.line = line;
+            this.kind = kind;
+            this.args = args;
+        }
+
+        List<String> references() {
+            switch (kind) {
+                case POLL:
+                    return args.subList(1, 2);
+                case USER:
+                    return List.of();
+                default:
+                    return args;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.crio.xpoll.dao;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.PollSummary;
+import com.crio.xpoll.util.DaoExecutor;
+
+/**
+ * Non-blocking facade over {@link PollDAO}.
+ * Each method runs the corresponding PollDAO call on a {@link DaoExecutor} and returns a future.
+ */
+public class AsyncPollDAO {
+
+    private final PollDAO pollDAO;
+    private final DaoExecutor executor;
+
+    /**
+     * Constructs an AsyncPollDAO.
+     *
+     * @param pollDAO  The blocking PollDAO to delegate to.
+     * @param executor The executor the calls run on.
+     */
+    public AsyncPollDAO(PollDAO pollDAO, DaoExecutor executor) {
+        this.pollDAO = pollDAO;
+        this.executor = executor;
+    }
+
+    /**
+     * @see PollDAO#createPoll(int, String, List)
+     */
+    public CompletableFuture<Poll> createPoll(int userId, String question, List<String> choices) {
+        return executor.submit(() -> pollDAO.createPoll(userId, question, choices));
+    }
+
+    /**
+     * @see PollDAO#getPoll(int)
+     */
+    public CompletableFuture<Poll> getPoll(int pollId) {
+        return executor.submit(() -> pollDAO.getPoll(pollId));
+    }
+
+    /**
+     * @see PollDAO#closePoll(int)
+     */
+    public CompletableFuture<Void> closePoll(int pollId) {
+        return executor.submit(() -> {
+            pollDAO.closePoll(pollId);
+            return null;
+        });
+    }
+
+    /**
+     * @see PollDAO#getPollSummaries(int)
+     */
+    public CompletableFuture<List<PollSummary>> getPollSummaries(int pollId) {
+        return executor.submit(() -> pollDAO.getPollSummaries(pollId));
+    }
+}
@@ -0,0 +1,42 @@
+package com.crio.xpoll.dao;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.crio.xpoll.model.Response;
+import com.crio.xpoll.util.DaoExecutor;
+
+/**
+ * Non-blocking facade over {@link ResponseDAO}.
+ * Each method runs the corresponding ResponseDAO call on a {@link DaoExecutor} and returns a future.
+ */
+public class AsyncResponseDAO {
+
+    private final ResponseDAO responseDAO;
+    private final DaoExecutor executor;
+
+    /**
+     * Constructs an AsyncResponseDAO.
+     *
+     * @param responseDAO The blocking ResponseDAO to delegate to.
+     * @param executor    The executor the calls run on.
+     */
+    public AsyncResponseDAO(ResponseDAO responseDAO, DaoExecutor executor) {
+        this.responseDAO = responseDAO;
+        this.executor = executor;
+    }
+
+    /**
+     * @see ResponseDAO#createResponse(int, int, int)
+     */
+    public CompletableFuture<Response> createResponse(int pollId, int choiceId, int userId) {
+        return executor.submit(() -> responseDAO.createResponse(pollId, choiceId, userId));
+    }
+
+    /**
+     * @see ResponseDAO#createResponses(List)
+     */
+    public CompletableFuture<List<Response>> createResponses(List<Response> responses) {
+        return executor.submit(() -> responseDAO.createResponses(responses));
+    }
+}
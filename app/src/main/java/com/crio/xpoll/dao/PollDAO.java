@@ -7,12 +7,19 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MethodMetrics;
 import com.crio.xpoll.model.Choice;
 import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.PollResults;
 import com.crio.xpoll.model.PollSummary;
 import com.crio.xpoll.util.DatabaseConnection;
+import com.crio.xpoll.util.LruCache;
+import com.crio.xpoll.util.ShardRouter;
 
 /**
  * Data Access Object (DAO) for managing polls in the XPoll application.
@@ -20,19 +27,75 @@ import com.crio.xpoll.util.DatabaseConnection;
  */
 public class PollDAO {
 
+    public static final int DEFAULT_CACHE_SIZE = 10_000;
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 300_000;
+
+    /**
+     * The SQLState of the exception thrown by {@link #getPoll(int)} for an unknown poll ("no data").
+     */
+    public static final String POLL_NOT_FOUND_SQL_STATE = "02000";
+
+    private static final MethodMetrics CREATE_POLL_METRICS = DaoMetrics.getInstance().method("PollDAO.createPoll");
+    private static final MethodMetrics GET_POLL_METRICS = DaoMetrics.getInstance().method("PollDAO.getPoll");
+    private static final MethodMetrics LOAD_POLL_METRICS = DaoMetrics.getInstance().method("PollDAO.getPoll.load");
+    private static final MethodMetrics CLOSE_POLL_METRICS = DaoMetrics.getInstance().method("PollDAO.closePoll");
+    private static final MethodMetrics GET_SUMMARIES_METRICS = DaoMetrics.getInstance().method("PollDAO.getPollSummaries");
+
     private final DatabaseConnection databaseConnection;
+    private final LruCache<Integer, Poll> pollCache;
+    private final ShardRouter shardRouter;
+    private final VoteTally tally;
 
     /**
-     * Constructs a PollDAO with the specified DatabaseConnection.
+     * Constructs a PollDAO with the specified DatabaseConnection and a default-sized poll cache.
      *
      * @param databaseConnection The DatabaseConnection to be used for database operations.
      */
     public PollDAO(DatabaseConnection databaseConnection) {
+        this(databaseConnection, new LruCache<>(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_MILLIS));
+    }
+
+    /**
+     * Constructs a PollDAO with the specified DatabaseConnection and poll cache.
+     * Questions and choices never change after creation, so only {@link #closePoll(int)} touches cached polls.
+     *
+     * @param databaseConnection The DatabaseConnection to be used for database operations.
+     * @param pollCache          The read-through cache in front of {@link #getPoll(int)}.
+     */
+    public PollDAO(DatabaseConnection databaseConnection, LruCache<Integer, Poll> pollCache) {
+        this(databaseConnection, pollCache, ShardRouter.single(databaseConnection));
+    }
+
+    /**
+     * Constructs a PollDAO whose summaries read vote counters from the shard each poll routes to.
+     *
+     * @param databaseConnection The DatabaseConnection holding polls and choices.
+     * @param pollCache          The read-through cache in front of {@link #getPoll(int)}.
+     * @param shardRouter        The router that picks the database holding each poll's counters.
+     */
+    public PollDAO(DatabaseConnection databaseConnection, LruCache<Integer, Poll> pollCache, ShardRouter shardRouter) {
+        this(databaseConnection, pollCache, shardRouter, null);
+    }
+
+    /**
+     * Constructs a PollDAO whose summaries of polls owned by the given tally are answered from memory.
+     *
+     * @param databaseConnection The DatabaseConnection holding polls and choices.
+     * @param pollCache          The read-through cache in front of {@link #getPoll(int)}.
+     * @param shardRouter        The router that picks the database holding each poll's counters.
+     * @param tally              The in-memory tally shared with the ResponseDAO, or null.
+     */
+    public PollDAO(DatabaseConnection databaseConnection, LruCache<Integer, Poll> pollCache, ShardRouter shardRouter,
+            VoteTally tally) {
         this.databaseConnection = databaseConnection;
+        this.pollCache = pollCache;
+        this.shardRouter = shardRouter;
+        this.tally = tally;
     }
 
     /**
      * Creates a new poll with the specified question and choices.
+     * The poll row and all choice rows are inserted in one transaction.
      *
      * @param userId   The ID of the user creating the poll.
      * @param question The question for the poll.
@@ -41,114 +104,164 @@ public class PollDAO {
      * @throws SQLException If a database error occurs during poll creation.
      */
     public Poll createPoll(int userId, String question, List<String> choices) throws SQLException {
+        try (MethodMetrics.Sample sample = CREATE_POLL_METRICS.start()) {
+            Poll poll = insertPoll(userId, question, choices);
+            sample.succeeded(1 + choices.size());
+            return poll;
+        }
+    }
+
+    private Poll insertPoll(int userId, String question, List<String> choices) throws SQLException {
 
         String pollSql = "INSERT INTO polls (user_Id, question, is_closed, created_at) VALUES (?, ?, ?, ?)";
-        String choiceSql = "INSERT INTO choices (poll_id, choice_text) VALUES (? , ?)";
-    
+
         // List to hold Choice objects that will be associated with the Poll
-        List<Choice> choiceObjects = new ArrayList<>();
-    
+        List<Choice> choiceObjects = new ArrayList<>(choices.size());
+
         try (Connection conn = databaseConnection.getConnection();
              PreparedStatement pollStmt = conn.prepareStatement(pollSql, PreparedStatement.RETURN_GENERATED_KEYS)) {
-            // Set poll parameters
-            pollStmt.setInt(1, userId);
-            pollStmt.setString(2, question);
-            pollStmt.setBoolean(3, false); // Default value for is_closed
-            pollStmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
-    
-            // Execute the poll insertion and get the generated poll ID
-            pollStmt.executeUpdate();
-    
-            try (ResultSet generatedKeys = pollStmt.getGeneratedKeys()) {
-                if (generatedKeys.next()) {
-                    int pollId = generatedKeys.getInt(1);
-    
-                    // Insert each choice associated with the poll
-                    try (PreparedStatement choiceStmt = conn.prepareStatement(choiceSql, PreparedStatement.RETURN_GENERATED_KEYS)) {
-                        for (String choiceText : choices) {
-                            choiceStmt.setInt(1, pollId);
-                            choiceStmt.setString(2, choiceText);
-                            choiceStmt.executeUpdate();
-    
-                            try (ResultSet choiceKeys = choiceStmt.getGeneratedKeys()) {
-                                if (choiceKeys.next()) {
-                                    int choiceId = choiceKeys.getInt(1); // Retrieve the generated choice ID
-    
-                                    // Create a Choice object with the retrieved choiceId, pollId, and choiceText
-                                    Choice choice = new Choice(choiceId, pollId, choiceText);
-                                    choiceObjects.add(choice); // Add the created Choice object to the list
-                                } else {
-                                    throw new SQLException("Creating choice failed, no ID obtained.");
-                                }
-                            }
-                        }
+
+            // The poll and its choices are written atomically, so a failure never leaves an orphaned poll
+            conn.setAutoCommit(false);
+            try {
+                // Set poll parameters
+                pollStmt.setInt(1, userId);
+                pollStmt.setString(2, question);
+                pollStmt.setBoolean(3, false); // Default value for is_closed
+                pollStmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+
+                // Execute the poll insertion and get the generated poll ID
+                pollStmt.executeUpdate();
+
+                int pollId;
+                try (ResultSet generatedKeys = pollStmt.getGeneratedKeys()) {
+                    if (!generatedKeys.next()) {
+                        throw new SQLException("Creating poll failed, no ID obtained.");
+                    }
+                    pollId = generatedKeys.getInt(1);
+                }
+
+                if (!choices.isEmpty()) {
+                    insertChoices(conn, pollId, choices, choiceObjects);
+                }
+                conn.commit();
+                databaseConnection.markWrite(pollKey(pollId));
+
+                // Return the Poll object with the associated choices
+                Poll poll = new Poll(pollId, userId, question, choiceObjects);
+                pollCache.put(pollId, poll);
+                return poll;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Inserts all choices of a poll with one multi-row INSERT.
+     * MySQL returns the generated IDs of a multi-row insert in row order.
+     */
+    private void insertChoices(Connection conn, int pollId, List<String> choices, List<Choice> choiceObjects)
+            throws SQLException {
+
+        StringBuilder choiceSql = new StringBuilder("INSERT INTO choices (poll_id, choice_text) VALUES ");
+        for (int i = 0; i < choices.size(); i++) {
+            choiceSql.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+        }
+
+        try (PreparedStatement choiceStmt = conn.prepareStatement(choiceSql.toString(), PreparedStatement.RETURN_GENERATED_KEYS)) {
+            int param = 1;
+            for (String choiceText : choices) {
+                choiceStmt.setInt(param++, pollId);
+                choiceStmt.setString(param++, choiceText);
+            }
+            choiceStmt.executeUpdate();
+
+            try (ResultSet choiceKeys = choiceStmt.getGeneratedKeys()) {
+                for (String choiceText : choices) {
+                    if (!choiceKeys.next()) {
+                        throw new SQLException("Creating choice failed, no ID obtained.");
                     }
-                    // Return the Poll object with the associated choices
-                    return new Poll(pollId, userId, question, choiceObjects);
-                } else {
-                    throw new SQLException("Creating poll failed, no ID obtained.");
+                    // Create a Choice object with the retrieved choiceId, pollId, and choiceText
+                    choiceObjects.add(new Choice(choiceKeys.getInt(1), pollId, choiceText));
                 }
             }
         }
     }
 
     /**
-     * Retrieves a poll by its ID.
+     * Retrieves a poll by its ID, serving it from the poll cache when possible.
      *
      * @param pollId The ID of the poll to retrieve.
      * @return The Poll object with its associated choices.
-     * @throws SQLException If a database error occurs or the poll is not found.
+     * @throws SQLException If a database error occurs or the poll is not found; the latter has SQLState 02000.
      */
     public Poll getPoll(int pollId) throws SQLException {
-       
-        String sql = "SELECT * FROM polls WHERE id = ?";
+        try (MethodMetrics.Sample sample = GET_POLL_METRICS.start()) {
+            Poll poll = pollCache.get(pollId, this::loadPoll);
+            sample.succeeded(0);
+            return poll;
+        }
+    }
+
+    private Poll loadPoll(int pollId) throws SQLException {
+        try (MethodMetrics.Sample sample = LOAD_POLL_METRICS.start()) {
+            Poll poll = selectPoll(pollId);
+            sample.succeeded(Math.max(1, poll.getChoices().size()));
+            return poll;
+        }
+    }
+
+    private Poll selectPoll(int pollId) throws SQLException {
+
+        // One round trip: the poll columns repeat on every choice row
+        String sql = "SELECT p.id, p.user_id, p.question, p.is_closed, c.id AS choice_id, c.choice_text "
+                + "FROM polls p LEFT JOIN choices c ON c.poll_id = p.id "
+                + "WHERE p.id = ? ORDER BY c.id";
         List<Choice> choices = new ArrayList<>();
-    
-        try (Connection conn = databaseConnection.getConnection();
+
+        // A poll created or closed moments ago may not have reached the replicas yet
+        try (Connection conn = databaseConnection.getReadConnection(pollKey(pollId));
              PreparedStatement stmt = conn.prepareStatement(sql)) {
-    
+
             stmt.setInt(1, pollId);
-            
+
             try (ResultSet rs = stmt.executeQuery()) {
-                if (rs.next()) {
-                    int id = rs.getInt("id");
-                    int userId = rs.getInt("user_id");
-                    String question = rs.getString("question");
-                    boolean isClosed = rs.getBoolean("is_closed");
-    
-                    // Fetch associated choices
-                    String choicesSql = "SELECT * FROM choices WHERE poll_id = ?";
-                    try (PreparedStatement choicesStmt = conn.prepareStatement(choicesSql)) {
-                        choicesStmt.setInt(1, id);
-                        try (ResultSet choicesRs = choicesStmt.executeQuery()) {
-                            while (choicesRs.next()) {
-                                int choiceId = choicesRs.getInt("id");
-                                int choicePollId = choicesRs.getInt("poll_id");
-                                String choiceText = choicesRs.getString("choice_text"); // Updated to choice_text
-                                choices.add(new Choice(choiceId, choicePollId, choiceText));
-                            }
-                        }
-                    }
-    
-                    return new Poll(id, userId, question, choices, isClosed);
-                } else {
-                    throw new SQLException("Poll not found with ID: " + pollId);
+                if (!rs.next()) {
+                    throw new SQLException("Poll not found with ID: " + pollId, POLL_NOT_FOUND_SQL_STATE);
                 }
+                // Columns by position, in the order of the SELECT list
+                int id = rs.getInt(1);
+                int userId = rs.getInt(2);
+                String question = rs.getString(3);
+                boolean isClosed = rs.getBoolean(4);
+
+                do {
+                    int choiceId = rs.getInt(5);
+                    if (!rs.wasNull()) {
+                        choices.add(new Choice(choiceId, id, rs.getString(6)));
+                    }
+                } while (rs.next());
+
+                return new Poll(id, userId, question, choices, isClosed);
             }
         }
     }
 
     /**
      * Closes a poll by updating its status in the database.
+     * Any cached copy of the poll is invalidated so the next read sees it closed.
      *
      * @param pollId The ID of the poll to close.
-     * @throws SQLException If a database error occurs during the update.
+     * @throws SQLException If a database error occurs during the update, or with SQLState 02000 if the poll does not exist.
      */
     public void closePoll(int pollId) throws SQLException {
 
         String sql = "UPDATE polls SET is_closed = TRUE WHERE id = ?";
 
-        try (Connection conn = databaseConnection.getConnection();
+        try (MethodMetrics.Sample sample = CLOSE_POLL_METRICS.start();
+             Connection conn = databaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)){
 
             stmt.setInt(1, pollId);
@@ -156,38 +269,128 @@ public class PollDAO {
             int affectedRows = stmt.executeUpdate();
                 
             if (affectedRows==0){
-                throw new SQLException("Closing poll failed, no rows affected.");
+                throw new SQLException("Closing poll failed, no rows affected.", POLL_NOT_FOUND_SQL_STATE);
             }
+            sample.succeeded(affectedRows);
         }
+
+        databaseConnection.markWrite(pollKey(pollId));
+        pollCache.invalidate(pollId);
+    }
+
+    /**
+     * Returns the cache in front of {@link #getPoll(int)}, e.g. to read its hit/miss statistics.
+     */
+    public LruCache<Integer, Poll> getPollCache() {
+        return pollCache;
     }
 
     /**
      * Retrieves a list of poll summaries for the specified poll.
+     * The question and choices come from the poll cache and the counts from the poll's
+     * {@code choice_counts} rows, so the cost is per choice rather than per response.
+     *
+     * The counts may be read from a replica and lag slightly behind the latest votes.
      *
      * @param pollId The ID of the poll for which to retrieve summaries.
      * @return A list of PollSummary objects containing the poll question, choice text, and response count.
      * @throws SQLException If a database error occurs during the query.
      */
     public List<PollSummary> getPollSummaries(int pollId) throws SQLException {
-       
-       String sql = "SELECT question, choice_text, response_count FROM poll_summaries WHERE poll_id = ? ";
+        return getPollSummaries(pollId, null);
+    }
 
-        List<PollSummary> summeries = new ArrayList<>();
+    /**
+     * Retrieves the poll summaries as seen by a user: if the user voted within the
+     * read-your-writes window, the counts are read from the primary so they include that vote.
+     *
+     * @param pollId The ID of the poll for which to retrieve summaries.
+     * @param userId The ID of the user asking, or null for any replica.
+     * @return A list of PollSummary objects containing the poll question, choice text, and response count.
+     * @throws SQLException If a database error occurs during the query.
+     * @see #getPollResults(int, Integer)
+     */
+    public List<PollSummary> getPollSummaries(int pollId, Integer userId) throws SQLException {
+        return getPollResults(pollId, userId).asSummaries();
+    }
 
-        try(Connection conn = databaseConnection.getConnection();
-        PreparedStatement stmt = conn.prepareStatement(sql)){
+    /**
+     * Retrieves the response count of every choice of a poll, with the question and choice texts
+     * shared with the cached poll rather than copied per choice.
+     *
+     * @param pollId The ID of the poll.
+     * @param userId The ID of the user asking, for read-your-writes, or null for any replica.
+     * @return The counts, aligned with the poll's choices.
+     * @throws SQLException If a database error occurs, or with SQLState 02000 if the poll does not exist.
+     */
+    public PollResults getPollResults(int pollId, Integer userId) throws SQLException {
+
+        try (MethodMetrics.Sample sample = GET_SUMMARIES_METRICS.start()) {
+            Poll poll = getPoll(pollId);
+            long[] counts;
+            if (tally != null && tally.owns(pollId)) {
+                counts = tally.getCounts(poll);
+            } else {
+                counts = new long[poll.getChoices().size()];
+                readCounts(pollId, userId, (choiceId, count) -> {
+                    int index = poll.indexOfChoice(choiceId);
+                    if (index >= 0) {
+                        counts[index] = count;
+                    }
+                });
+            }
+            sample.succeeded(counts.length);
+            return new PollResults(poll, counts);
+        }
+    }
+
+    /**
+     * Reads the response count of every choice of a poll that has at least one response,
+     * from memory if the poll is owned by the fast tally.
+     *
+     * @param pollId The ID of the poll.
+     * @param userId The ID of the user asking, for read-your-writes, or null for any replica.
+     * @return The counts keyed by choice ID; choices without responses are absent.
+     * @throws SQLException If a database error occurs during the query.
+     */
+    public Map<Integer, Long> getChoiceCounts(int pollId, Integer userId) throws SQLException {
+
+        if (tally != null && tally.owns(pollId)) {
+            return tally.getCounts(pollId);
+        }
+
+        Map<Integer, Long> counts = new HashMap<>();
+        readCounts(pollId, userId, counts::put);
+        return counts;
+    }
+
+    private void readCounts(int pollId, Integer userId, CountConsumer consumer) throws SQLException {
+
+        String sql = "SELECT choice_id, response_count FROM choice_counts WHERE poll_id = ?";
+
+        DatabaseConnection shard = shardRouter.forPoll(pollId);
+        try (Connection conn = userId == null ? shard.getReadConnection() : shard.getReadConnection(userKey(userId));
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
             stmt.setInt(1, pollId);
 
-            try(ResultSet rs= stmt.executeQuery()){
-                while(rs.next()){
-                    String question = rs.getString("question");
-                    String choiceText = rs.getString("choice_text");
-                    int responseCount = rs.getInt("response_count");
-                PollSummary summary = new PollSummary(question, choiceText, responseCount);
-                summeries.add(summary);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    consumer.accept(rs.getInt(1), rs.getLong(2));
                 }
             }
         }
-        return summeries;
     }
-}
\ No newline at end of file
+
+    @FunctionalInterface
+    private interface CountConsumer {
+        void accept(int choiceId, long count);
+    }
+
+    static String pollKey(int pollId) {
+        return "poll:" + pollId;
+    }
+
+    static String userKey(int userId) {
+        return "user:" + userId;
+    }
+}
@@ -0,0 +1,205 @@
+package com.crio.xpoll.dao;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.crio.xpoll.model.Response;
+
+/**
+ * Write-behind ingestion for votes.
+ * Responses are queued in a bounded buffer and a background writer flushes them through
+ * {@link ResponseDAO#createResponses(List)} once a batch is full or the oldest queued vote
+ * has waited {@code maxDelayMillis}. Each caller gets a future that completes after commit.
+ * A batch is written one shard at a time, so a failing shard does not fail the votes already
+ * committed on the others.
+ */
+public class ResponseBatchWriter implements AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 65_536;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 500;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 5;
+
+    // How often an idle writer wakes up to notice close()
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final ResponseDAO responseDAO;
+    private final BlockingQueue<PendingResponse> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * Constructs a ResponseBatchWriter with the default buffer size and flush triggers.
+     *
+     * @param responseDAO The ResponseDAO used to write each batch.
+     */
+    public ResponseBatchWriter(ResponseDAO responseDAO) {
+        this(responseDAO, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Constructs a ResponseBatchWriter.
+     *
+     * @param responseDAO    The ResponseDAO used to write each batch.
+     * @param capacity       The number of votes that may be queued before {@link #submit} blocks.
+     * @param maxBatchSize   The largest number of votes written in one batch.
+     * @param maxDelayMillis The longest a queued vote waits for its batch to fill up.
+     */
+    public ResponseBatchWriter(ResponseDAO responseDAO, int capacity, int maxBatchSize, long maxDelayMillis) {
+        this.responseDAO = responseDAO;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.writer = new Thread(this::run, "xpoll-response-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a response for the next batch. Blocks while the buffer is full.
+     *
+     * @param pollId   The ID of the poll to which the response is made.
+     * @param choiceId The ID of the choice selected by the user.
+     * @param userId   The ID of the user making the response.
+     * @return A future completed with the response once its batch commits, or exceptionally if it is rejected.
+     */
+    public CompletableFuture<Response> submit(int pollId, int choiceId, int userId) {
+        PendingResponse pending = new PendingResponse(new Response(pollId, choiceId, userId));
+        if (!running) {
+            pending.future.completeExceptionally(writerClosed());
+            return pending.future;
+        }
+        try {
+            queue.put(pending);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending.future.completeExceptionally(e);
+            return pending.future;
+        }
+        // close() may have run between the check and the put, after the writer's last pass and its own drain.
+        // Whoever takes the vote off the queue completes it: the writer, close() or this call
+        if (!running && queue.remove(pending)) {
+            pending.future.completeExceptionally(writerClosed());
+        }
+        return pending.future;
+    }
+
+    /**
+     * Stops accepting votes, flushes everything already queued and waits for the writer to finish.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // A submit racing with close() may have queued after the writer's last pass
+        PendingResponse late;
+        while ((late = queue.poll()) != null) {
+            late.future.completeExceptionally(writerClosed());
+        }
+    }
+
+    private static SQLException writerClosed() {
+        return new SQLException("Response writer is closed.");
+    }
+
+    private void run() {
+        List<PendingResponse> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingResponse first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (batch.size() < maxBatchSize) {
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    PendingResponse next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            if (!batch.isEmpty()) {
+                flush(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes a batch, one shard's votes at a time. Whatever goes wrong, every vote of a shard's slice that
+     * is not written yet fails and the writer goes on, so no caller waits forever.
+     */
+    private void flush(List<PendingResponse> batch) {
+        // Each slice commits or rolls back as a whole, so a failure never leaves part of it written
+        Map<Integer, List<PendingResponse>> perShard = new LinkedHashMap<>();
+        for (PendingResponse pending : batch) {
+            perShard.computeIfAbsent(responseDAO.shardOf(pending.response.getPollId()), k -> new ArrayList<>()).add(pending);
+        }
+        for (List<PendingResponse> slice : perShard.values()) {
+            try {
+                write(slice);
+            } catch (Throwable t) {
+                // e.g. a RuntimeException from a listener or the vote guard; completed futures keep their outcome
+                t.printStackTrace();
+                for (PendingResponse pending : slice) {
+                    pending.future.completeExceptionally(t);
+                }
+            }
+        }
+    }
+
+    private void write(List<PendingResponse> slice) {
+        List<Response> responses = new ArrayList<>(slice.size());
+        for (PendingResponse pending : slice) {
+            responses.add(pending.response);
+        }
+        try {
+            responseDAO.createResponses(responses);
+            for (PendingResponse pending : slice) {
+                pending.future.complete(pending.response);
+            }
+        } catch (SQLException sliceFailure) {
+            // One bad vote (e.g. a duplicate) rolls back the whole slice, and nothing of it was
+            // written; retry individually so that only the offending votes fail.
+            for (PendingResponse pending : slice) {
+                Response r = pending.response;
+                try {
+                    pending.future.complete(responseDAO.createResponse(r.getPollId(), r.getChoiceId(), r.getUserId()));
+                } catch (SQLException | RuntimeException e) {
+                    pending.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    private static final class PendingResponse {
+        private final Response response;
+        private final CompletableFuture<Response> future = new CompletableFuture<>();
+
+        private PendingResponse(Response response) {
+            this.response = response;
+        }
+    }
+}
@@ -5,15 +5,50 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MethodMetrics;
 import com.crio.xpoll.model.Response;
 import com.crio.xpoll.util.DatabaseConnection;
+import com.crio.xpoll.util.ShardRouter;
 
 /**
  * Data Access Object (DAO) for managing responses in the XPoll application.
- * Provides methods for creating responses to polls.
+ * Provides methods for creating responses to polls and keeps the per-choice
+ * counters in {@code choice_counts} in step with them. Responses and counters of
+ * a poll live on the shard its ID routes to. With a {@link VoteTally} the counters are
+ * kept in memory and checkpointed instead. Committed responses are passed on to
+ * any registered {@link ResponseListener}.
  */
 public class ResponseDAO {
-    private final DatabaseConnection databaseConnection;
+
+    private static final String INSERT_SQL = "INSERT INTO responses (poll_id, choice_id, user_id, created_at) VALUES (?, ?, ?, ?)";
+
+    // With one vote per user, voter_id repeats the user so the (poll_id, voter_id) unique key rejects a second vote
+    private static final String INSERT_VOTER_SQL = "INSERT INTO responses (poll_id, choice_id, user_id, created_at, voter_id) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String INCREMENT_COUNT_SQL = "INSERT INTO choice_counts (choice_id, poll_id, response_count) VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE response_count = response_count + VALUES(response_count)";
+
+    // Reads responses only, so it also works on shards that have no choices table
+    private static final String REBUILD_COUNTS_SQL = "INSERT INTO choice_counts (choice_id, poll_id, response_count) "
+            + "SELECT choice_id, poll_id, COUNT(*) FROM responses ";
+
+    private static final MethodMetrics CREATE_RESPONSE_METRICS = DaoMetrics.getInstance().method("ResponseDAO.createResponse");
+    private static final MethodMetrics CREATE_RESPONSES_METRICS = DaoMetrics.getInstance().method("ResponseDAO.createResponses");
+    private static final MethodMetrics RECONCILE_METRICS = DaoMetrics.getInstance().method("ResponseDAO.reconcileChoiceCounts");
+
+    private final ShardRouter shardRouter;
+    private final VoteTally tally;
+    private final VoteGuard voteGuard;
+    private final List<ResponseListener> listeners = new CopyOnWriteArrayList<>();
 
     /**
      * Constructs a ResponseDAO with the specified DatabaseConnection.
@@ -21,33 +56,320 @@ public class ResponseDAO {
      * @param databaseConnection The DatabaseConnection to be used for database operations.
      */
     public ResponseDAO(DatabaseConnection databaseConnection) {
-        this.databaseConnection = databaseConnection;
+        this(ShardRouter.single(databaseConnection));
+    }
+
+    /**
+     * Constructs a ResponseDAO that spreads responses over the shards of the given router.
+     *
+     * @param shardRouter The router that picks the database of each poll.
+     */
+    public ResponseDAO(ShardRouter shardRouter) {
+        this(shardRouter, null);
+    }
+
+    /**
+     * Constructs a ResponseDAO that counts votes in the given tally instead of updating
+     * {@code choice_counts} in each vote's transaction.
+     *
+     * @param shardRouter The router that picks the database of each poll.
+     * @param tally       The in-memory tally, or null to update {@code choice_counts} synchronously.
+     */
+    public ResponseDAO(ShardRouter shardRouter, VoteTally tally) {
+        this(shardRouter, tally, null);
+    }
+
+    /**
+     * Constructs a ResponseDAO that optionally counts votes in memory and allows one vote per user and poll.
+     *
+     * @param shardRouter The router that picks the database of each poll.
+     * @param tally       The in-memory tally, or null to update {@code choice_counts} synchronously.
+     * @param voteGuard   The one-vote-per-user check, or null to allow a vote per choice.
+     */
+    public ResponseDAO(ShardRouter shardRouter, VoteTally tally, VoteGuard voteGuard) {
+        this.shardRouter = shardRouter;
+        this.tally = tally;
+        this.voteGuard = voteGuard;
+    }
+
+    public ShardRouter getShardRouter() {
+        return shardRouter;
+    }
+
+    /**
+     * Returns whether votes are limited to one per user and poll, i.e. written with a {@code voter_id}.
+     */
+    boolean isOnePerUser() {
+        return voteGuard != null;
+    }
+
+    /**
+     * Registers a listener for committed responses.
+     */
+    public void addListener(ResponseListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ResponseListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the shard number of a poll's responses, for callers that split work by shard.
+     */
+    int shardOf(int pollId) {
+        return shardRouter.shardOf(pollId);
     }
 
     /**
      * Creates a new response for a specified poll, choice, and user.
+     * The response row and its choice counter are written in one transaction,
+     * unless the counter is kept by a {@link VoteTally}.
      *
      * @param pollId   The ID of the poll to which the response is made.
      * @param choiceId The ID of the choice selected by the user.
      * @param userId   The ID of the user making the response.
      * @return A Response object representing the created response.
-     * @throws SQLException If a database error occurs during response creation.
+     * @throws SQLException If a database error occurs during response creation, or a
+     *                      {@link java.sql.SQLIntegrityConstraintViolationException} if the user already voted.
      */
     public Response createResponse(int pollId, int choiceId, int userId) throws SQLException {
+        if (voteGuard != null) {
+            return voteGuard.vote(pollId, userId, () -> insertResponse(pollId, choiceId, userId));
+        }
+        return insertResponse(pollId, choiceId, userId);
+    }
+
+    private Response insertResponse(int pollId, int choiceId, int userId) throws SQLException {
+
+        DatabaseConnection shard = shardRouter.forPoll(pollId);
+        try (MethodMetrics.Sample sample = CREATE_RESPONSE_METRICS.start();
+             Connection conn = shard.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(voteGuard == null ? INSERT_SQL : INSERT_VOTER_SQL)) {
 
-        String sql = "INSERT INTO responses (poll_id, choice_id, user_id, created_at) VALUES (?, ?, ?, ?)";
+            conn.setAutoCommit(false);
+            try {
+                stmt.setInt(1, pollId);
+                stmt.setInt(2, choiceId);
+                stmt.setInt(3, userId);
+                stmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+                if (voteGuard != null) {
+                    stmt.setInt(5, userId);
+                }
+                stmt.executeUpdate();
+
+                if (tally == null) {
+                    try (PreparedStatement countStmt = conn.prepareStatement(INCREMENT_COUNT_SQL)) {
+                        countStmt.setInt(1, choiceId);
+                        countStmt.setInt(2, pollId);
+                        countStmt.setLong(3, 1);
+                        countStmt.executeUpdate();
+                    }
+                }
+
+                conn.commit();
+                sample.succeeded(1);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+            shard.markWrite(PollDAO.userKey(userId));
+            if (tally != null) {
+                tally.record(pollId, choiceId);
+            }
+
+            Response response = new Response(pollId, choiceId, userId);
+            notifyListeners(Collections.singletonList(response));
+            return response;
+        }
+    }
+
+    /**
+     * Inserts several responses as one JDBC batch per shard, each inside a single transaction.
+     * Without sharding either every response is stored or none is; with sharding that holds per shard.
+     *
+     * @param responses The responses to insert.
+     * @return The same responses, once committed.
+     * @throws SQLException If a database error occurs; the failing shard's batch is rolled back.
+     *                      With one vote per user, nothing is written if any user already voted.
+     */
+    public List<Response> createResponses(List<Response> responses) throws SQLException {
+        if (voteGuard != null) {
+            return voteGuard.voteAll(responses, () -> insertResponses(responses));
+        }
+        return insertResponses(responses);
+    }
+
+    private List<Response> insertResponses(List<Response> responses) throws SQLException {
+
+        try (MethodMetrics.Sample sample = CREATE_RESPONSES_METRICS.start()) {
+            if (!shardRouter.isSharded()) {
+                insertBatch(shardRouter.all().get(0), responses);
+            } else {
+                Map<DatabaseConnection, List<Response>> perShard = new LinkedHashMap<>();
+                for (Response response : responses) {
+                    perShard.computeIfAbsent(shardRouter.forPoll(response.getPollId()), k -> new ArrayList<>()).add(response);
+                }
+                for (Map.Entry<DatabaseConnection, List<Response>> entry : perShard.entrySet()) {
+                    insertBatch(entry.getKey(), entry.getValue());
+                }
+            }
+            sample.succeeded(responses.size());
+            return responses;
+        }
+    }
+
+    private void insertBatch(DatabaseConnection databaseConnection, List<Response> responses) throws SQLException {
 
         try (Connection conn = databaseConnection.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
+             PreparedStatement stmt = conn.prepareStatement(voteGuard == null ? INSERT_SQL : INSERT_VOTER_SQL)) {
+
+            conn.setAutoCommit(false);
+            try {
+                Timestamp now = new Timestamp(System.currentTimeMillis());
+                for (Response response : responses) {
+                    stmt.setInt(1, response.getPollId());
+                    stmt.setInt(2, response.getChoiceId());
+                    stmt.setInt(3, response.getUserId());
+                    stmt.setTimestamp(4, now);
+                    if (voteGuard != null) {
+                        stmt.setInt(5, response.getUserId());
+                    }
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+
+                if (tally == null) {
+                    try (PreparedStatement countStmt = conn.prepareStatement(INCREMENT_COUNT_SQL)) {
+                        addCountIncrements(countStmt, responses);
+                        countStmt.executeBatch();
+                    }
+                }
+
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        for (Response response : responses) {
+            databaseConnection.markWrite(PollDAO.userKey(response.getUserId()));
+        }
+        if (tally != null) {
+            tally.record(responses);
+        }
+        notifyListeners(Collections.unmodifiableList(responses));
+    }
+
+    private void notifyListeners(List<Response> responses) {
+        for (ResponseListener listener : listeners) {
+            try {
+                listener.onResponsesCommitted(responses);
+            } catch (RuntimeException e) {
+                // The responses are already committed; a failing listener must not fail the write
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Recomputes every row of {@code choice_counts} from the {@code responses} table, shard by shard.
+     * The shard's fast-tally checkpoint is cleared, so the next checkpoint starts over from the rebuilt counters.
+     *
+     * @throws SQLException If a database error occurs; the failing shard keeps its previous counters.
+     */
+    public void reconcileChoiceCounts() throws SQLException {
+        for (DatabaseConnection shard : shardRouter.all()) {
+            rebuildCounts(shard, null);
+        }
+    }
+
+    /**
+     * Recomputes the {@code choice_counts} rows of one poll from the {@code responses} table.
+     * With the fast tally the shard's checkpoint is kept: the poll's counters are rebuilt up to it,
+     * and the next checkpoint adds the responses after it as usual.
+     *
+     * @param pollId The ID of the poll whose counters are rebuilt.
+     * @throws SQLException If a database error occurs; the previous counters are kept.
+     */
+    public void reconcileChoiceCounts(int pollId) throws SQLException {
+        rebuildCounts(shardRouter.forPoll(pollId), pollId);
+    }
 
-            stmt.setInt(1, pollId);
-            stmt.setInt(2, choiceId);
-            stmt.setInt(3,userId);
-            stmt.setTimestamp(4, new Timestamp(System.currentTimeMillis()));
+    private void rebuildCounts(DatabaseConnection databaseConnection, Integer pollId) throws SQLException {
 
-            stmt.executeUpdate();
+        try (MethodMetrics.Sample sample = RECONCILE_METRICS.start();
+             Connection conn = databaseConnection.getConnection()) {
 
-            return new Response(pollId, choiceId, userId);
+            conn.setAutoCommit(false);
+            try {
+                int rows = pollId == null ? rebuildAllCounts(conn) : rebuildPollCounts(conn, pollId);
+                conn.commit();
+                sample.succeeded(rows);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+        if (tally != null) {
+            tally.reload(databaseConnection, pollId);
+        }
+    }
+
+    private static int rebuildAllCounts(Connection conn) throws SQLException {
+        try (PreparedStatement deleteStmt = conn.prepareStatement("DELETE FROM choice_counts");
+             PreparedStatement rebuildStmt = conn.prepareStatement(REBUILD_COUNTS_SQL + "GROUP BY choice_id, poll_id");
+             PreparedStatement checkpointStmt = conn.prepareStatement("DELETE FROM tally_checkpoints")) {
+            deleteStmt.executeUpdate();
+            int rows = rebuildStmt.executeUpdate();
+            // The counters now include responses past the checkpoint, which must not be added again
+            checkpointStmt.executeUpdate();
+            return rows;
+        }
+    }
+
+    private int rebuildPollCounts(Connection conn, int pollId) throws SQLException {
+        // The other polls' counters still rely on the checkpoint, so this poll's are rebuilt up to it.
+        // Locking the row keeps a concurrent checkpoint from moving it meanwhile
+        Timestamp checkpointAt = null;
+        if (tally != null) {
+            try (PreparedStatement checkpointStmt = conn.prepareStatement(
+                    "SELECT checkpoint_at FROM tally_checkpoints WHERE id = 1 FOR UPDATE");
+                 ResultSet rs = checkpointStmt.executeQuery()) {
+                if (rs.next()) {
+                    checkpointAt = rs.getTimestamp(1);
+                }
+            }
+        }
+        String rebuildSql = REBUILD_COUNTS_SQL + "WHERE poll_id = ?"
+                + (checkpointAt == null ? "" : " AND created_at <= ?") + " GROUP BY choice_id, poll_id";
+        try (PreparedStatement deleteStmt = conn.prepareStatement("DELETE FROM choice_counts WHERE poll_id = ?");
+             PreparedStatement rebuildStmt = conn.prepareStatement(rebuildSql)) {
+            deleteStmt.setInt(1, pollId);
+            deleteStmt.executeUpdate();
+            rebuildStmt.setInt(1, pollId);
+            if (checkpointAt != null) {
+                rebuildStmt.setTimestamp(2, checkpointAt);
+            }
+            return rebuildStmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds one counter increment per distinct choice, in choice order so that
+     * concurrent batches lock the counter rows in the same order.
+     */
+    private static void addCountIncrements(PreparedStatement countStmt, List<Response> responses) throws SQLException {
+        Map<Integer, long[]> perChoice = new TreeMap<>();
+        for (Response response : responses) {
+            long[] entry = perChoice.computeIfAbsent(response.getChoiceId(), k -> new long[] { response.getPollId(), 0 });
+            entry[1]++;
+        }
+        for (Map.Entry<Integer, long[]> entry : perChoice.entrySet()) {
+            countStmt.setInt(1, entry.getKey());
+            countStmt.setInt(2, (int) entry.getValue()[0]);
+            countStmt.setLong(3, entry.getValue()[1]);
+            countStmt.addBatch();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,269 @@
+package com.crio.xpoll.dao;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MethodMetrics;
+import com.crio.xpoll.util.DatabaseConnection;
+import com.crio.xpoll.util.ShardRouter;
+
+/**
+ * Streams votes from the responses table to a CSV or NDJSON channel.
+ * Rows are read with a MySQL streaming result set and encoded straight into a reused buffer,
+ * so memory use does not depend on how many rows are exported. The output uses the same
+ * formats {@link ResponseImporter} reads.
+ */
+public class ResponseExporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Longest encoded row: four fields, field names and a timestamp fit well within this
+    private static final int MAX_ROW_BYTES = 256;
+
+    private static final long PROGRESS_INTERVAL_ROWS = 100_000;
+
+    private static final MethodMetrics EXPORT_METRICS = DaoMetrics.getInstance().method("ResponseExporter.export");
+
+    private static final byte[] CSV_HEADER = ascii("poll_id,choice_id,user_id,created_at\n");
+    private static final byte[] JSON_POLL = ascii("{\"poll_id\":");
+    private static final byte[] JSON_CHOICE = ascii(",\"choice_id\":");
+    private static final byte[] JSON_USER = ascii(",\"user_id\":");
+    private static final byte[] JSON_CREATED = ascii(",\"created_at\":\"");
+    private static final byte[] JSON_END = ascii("\"}\n");
+
+    /**
+     * The output formats.
+     */
+    public enum Format {
+        CSV, NDJSON;
+
+        /**
+         * Returns NDJSON for {@code .ndjson}/{@code .jsonl} files and CSV otherwise.
+         */
+        public static Format forFile(Path file) {
+            String name = file.getFileName().toString().toLowerCase();
+            return name.endsWith(".ndjson") || name.endsWith(".jsonl") ? NDJSON : CSV;
+        }
+    }
+
+    /**
+     * Receives progress while rows are written.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long rowsExported, long elapsedMillis);
+    }
+
+    /**
+     * The outcome of an export.
+     */
+    public static final class Result {
+        private final long rowsExported;
+        private final long elapsedMillis;
+
+        private Result(long rowsExported, long elapsedMillis) {
+            this.rowsExported = rowsExported;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getRowsExported() {
+            return rowsExported;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private final ShardRouter shardRouter;
+
+    /**
+     * Constructs a ResponseExporter.
+     *
+     * @param responseDAO The ResponseDAO whose shards hold the responses.
+     */
+    public ResponseExporter(ResponseDAO responseDAO) {
+        this.shardRouter = responseDAO.getShardRouter();
+    }
+
+    /**
+     * Exports to a file, replacing it if it exists. The format follows the file name, see {@link Format#forFile}.
+     *
+     * @see #export(Integer, Timestamp, Timestamp, Format, WritableByteChannel, ProgressListener)
+     */
+    public Result exportFile(Integer pollId, Timestamp from, Timestamp to, Path file, ProgressListener progress)
+            throws SQLException, IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            return export(pollId, from, to, Format.forFile(file), channel, progress);
+        }
+    }
+
+    /**
+     * Writes every response matching the filters to the channel, in no particular order: each shard's rows
+     * are streamed as the query reads them, since sorting a whole table would hold the result back for a
+     * filesort. A poll filter reads its shard only; otherwise all shards are read one after another.
+     *
+     * @param pollId   The poll to export, or null for all polls.
+     * @param from     The earliest {@code created_at} to include, or null.
+     * @param to       The latest {@code created_at} to include, or null.
+     * @param format   The output format.
+     * @param out      The channel to write to; it is not closed.
+     * @param progress Called every hundred thousand rows and at the end; may be null.
+     * @return The number of rows written.
+     * @throws SQLException If the responses cannot be read.
+     * @throws IOException  If the channel cannot be written.
+     */
+    public Result export(Integer pollId, Timestamp from, Timestamp to, Format format, WritableByteChannel out,
+            ProgressListener progress) throws SQLException, IOException {
+
+        long start = System.currentTimeMillis();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long rows = 0;
+
+        try (MethodMetrics.Sample sample = EXPORT_METRICS.start()) {
+            if (format == Format.CSV) {
+                buffer.put(CSV_HEADER);
+            }
+            List<DatabaseConnection> shards = pollId == null ? shardRouter.all() : List.of(shardRouter.forPoll(pollId));
+            for (DatabaseConnection shard : shards) {
+                rows = exportShard(shard, pollId, from, to, format, out, buffer, rows, start, progress);
+            }
+            drain(buffer, out);
+            sample.succeeded(rows);
+        }
+
+        long elapsed = System.currentTimeMillis() - start;
+        if (progress != null) {
+            progress.onProgress(rows, elapsed);
+        }
+        return new Result(rows, elapsed);
+    }
+
+    private long exportShard(DatabaseConnection shard, Integer pollId, Timestamp from, Timestamp to, Format format,
+            WritableByteChannel out, ByteBuffer buffer, long rows, long start, ProgressListener progress)
+            throws SQLException, IOException {
+
+        StringBuilder sql = new StringBuilder("SELECT poll_id, choice_id, user_id, created_at FROM responses WHERE 1 = 1");
+        if (pollId != null) {
+            sql.append(" AND poll_id = ?");
+        }
+        if (from != null) {
+            sql.append(" AND created_at >= ?");
+        }
+        if (to != null) {
+            sql.append(" AND created_at <= ?");
+        }
+
+        // The three-argument prepareStatement bypasses the pool's statement cache: a streaming
+        // statement holds the connection until its result set is fully read
+        try (Connection conn = shard.getReadConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql.toString(), ResultSet.TYPE_FORWARD_ONLY,
+                     ResultSet.CONCUR_READ_ONLY)) {
+
+            // MySQL Connector/J streams rows one at a time instead of buffering the whole result
+            stmt.setFetchSize(Integer.MIN_VALUE);
+            int param = 1;
+            if (pollId != null) {
+                stmt.setInt(param++, pollId);
+            }
+            if (from != null) {
+                stmt.setTimestamp(param++, from);
+            }
+            if (to != null) {
+                stmt.setTimestamp(param, to);
+            }
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (buffer.remaining() < MAX_ROW_BYTES) {
+                        drain(buffer, out);
+                    }
+                    String createdAt = rs.getString(4);
+                    if (format == Format.CSV) {
+                        putInt(buffer, rs.getInt(1));
+                        buffer.put((byte) ',');
+                        putInt(buffer, rs.getInt(2));
+                        buffer.put((byte) ',');
+                        putInt(buffer, rs.getInt(3));
+                        buffer.put((byte) ',');
+                        putAscii(buffer, createdAt);
+                        buffer.put((byte) '\n');
+                    } else {
+                        buffer.put(JSON_POLL);
+                        putInt(buffer, rs.getInt(1));
+                        buffer.put(JSON_CHOICE);
+                        putInt(buffer, rs.getInt(2));
+                        buffer.put(JSON_USER);
+                        putInt(buffer, rs.getInt(3));
+                        buffer.put(JSON_CREATED);
+                        putAscii(buffer, createdAt);
+                        buffer.put(JSON_END);
+                    }
+                    if (++rows % PROGRESS_INTERVAL_ROWS == 0 && progress != null) {
+                        progress.onProgress(rows, System.currentTimeMillis() - start);
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void drain(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void putInt(ByteBuffer buffer, int value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            if (value == Integer.MIN_VALUE) {
+                putAscii(buffer, "2147483648");
+                return;
+            }
+            value = -value;
+        }
+        int digits = 1;
+        for (int v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= end - digits; i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+
+    // Timestamps are plain ASCII, so no charset encoder is needed
+    private static void putAscii(ByteBuffer buffer, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+}
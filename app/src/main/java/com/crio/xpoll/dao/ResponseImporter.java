@@ -0,0 +1,396 @@
+package com.crio.xpoll.dao;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MethodMetrics;
+import com.crio.xpoll.util.DatabaseConnection;
+import com.crio.xpoll.util.ShardRouter;
+
+/**
+ * Streams votes from a CSV or NDJSON file into the responses table.
+ * The file is read line by line and written in chunks of multi-row INSERTs, one transaction per chunk
+ * and one buffer per shard, so memory use depends on the chunk size and shard count only. The choice
+ * counters of every poll touched by the import are rebuilt from responses once all rows are in.
+ *
+ * <p>CSV lines are {@code poll_id,choice_id,user_id[,created_at]} with an optional header line;
+ * NDJSON lines are objects with {@code poll_id}/{@code pollId}, {@code choice_id}/{@code choiceId},
+ * {@code user_id}/{@code userId} and an optional {@code created_at}/{@code createdAt}.
+ */
+public class ResponseImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 5_000;
+
+    // Up to five placeholders per row; MySQL allows at most 65535 per statement
+    private static final int MAX_CHUNK_SIZE = 13_000;
+
+    private static final MethodMetrics IMPORT_CHUNK_METRICS = DaoMetrics.getInstance().method("ResponseImporter.importChunk");
+
+    private static final Pattern JSON_FIELD = Pattern.compile("\"(\\w+)\"\\s*:\\s*(\"[^\"]*\"|-?\\d+)");
+
+    /**
+     * Receives progress after each committed chunk.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long rowsImported, long elapsedMillis);
+    }
+
+    /**
+     * The outcome of an import.
+     */
+    public static final class Result {
+        private final long rowsImported;
+        private final int pollsAffected;
+        private final long elapsedMillis;
+
+        private Result(long rowsImported, int pollsAffected, long elapsedMillis) {
+            this.rowsImported = rowsImported;
+            this.pollsAffected = pollsAffected;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getRowsImported() {
+            return rowsImported;
+        }
+
+        public int getPollsAffected() {
+            return pollsAffected;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+
+    private final ResponseDAO responseDAO;
+    private final int chunkSize;
+    private final boolean skipDuplicates;
+    private final boolean onePerUser;
+
+    /**
+     * Constructs a ResponseImporter.
+     *
+     * @param responseDAO    The ResponseDAO whose shards receive the rows and whose counters are rebuilt afterwards.
+     * @param chunkSize      The number of rows per INSERT statement and transaction.
+     * @param skipDuplicates Whether rows that already exist, or with one vote per user repeat a user's vote, are
+     *                       skipped (INSERT IGNORE) instead of failing the chunk.
+     */
+    public ResponseImporter(ResponseDAO responseDAO, int chunkSize, boolean skipDuplicates) {
+        if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+        this.responseDAO = responseDAO;
+        this.chunkSize = chunkSize;
+        this.skipDuplicates = skipDuplicates;
+        this.onePerUser = responseDAO.isOnePerUser();
+    }
+
+    /**
+     * Imports every vote in the file. The format is NDJSON for {@code .ndjson}/{@code .jsonl} files and CSV otherwise.
+     * Chunks committed before a failure stay committed; their polls' counters are still rebuilt.
+     *
+     * @param file     The file to import.
+     * @param progress Called after each committed chunk; may be null.
+     * @return The number of rows imported and polls touched.
+     * @throws SQLException If a chunk cannot be written.
+     * @throws IOException  If the file cannot be read or a line cannot be parsed.
+     */
+    public Result importFile(Path file, ProgressListener progress) throws SQLException, IOException {
+        String name = file.getFileName().toString().toLowerCase();
+        boolean json = name.endsWith(".ndjson") || name.endsWith(".jsonl");
+
+        long start = System.currentTimeMillis();
+        long imported = 0;
+        Set<Integer> polls = new TreeSet<>();
+        ShardRouter shardRouter = responseDAO.getShardRouter();
+        ShardChunk[] chunks = new ShardChunk[shardRouter.size()];
+        Row row = new Row();
+        Throwable failure = null;
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            long lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || (!json && lineNumber == 1 && !Character.isDigit(line.charAt(0)))) {
+                    continue;
+                }
+                try {
+                    if (json) {
+                        parseJson(line, row);
+                    } else {
+                        parseCsv(line, row);
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Cannot parse line " + lineNumber + ": " + e.getMessage(), e);
+                }
+                polls.add(row.pollId);
+
+                int shard = shardRouter.shardOf(row.pollId);
+                if (chunks[shard] == null) {
+                    chunks[shard] = new ShardChunk(shardRouter.all().get(shard));
+                }
+                if (chunks[shard].add(row)) {
+                    imported += chunks[shard].flush();
+                    if (progress != null) {
+                        progress.onProgress(imported, System.currentTimeMillis() - start);
+                    }
+                }
+            }
+            for (ShardChunk chunk : chunks) {
+                if (chunk != null && chunk.buffered > 0) {
+                    imported += chunk.flush();
+                }
+            }
+            if (progress != null) {
+                progress.onProgress(imported, System.currentTimeMillis() - start);
+            }
+        } catch (Throwable t) {
+            failure = t;
+            throw t;
+        } finally {
+            finish(chunks, polls, failure);
+        }
+
+        return new Result(imported, polls.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Closes the chunks and rebuilds the counters of every poll touched, for whatever made it in.
+     * With an import failure, errors here are added to it as suppressed instead of replacing it.
+     */
+    private void finish(ShardChunk[] chunks, Set<Integer> polls, Throwable failure) throws SQLException {
+        SQLException error = null;
+        for (ShardChunk chunk : chunks) {
+            if (chunk != null) {
+                try {
+                    chunk.close();
+                } catch (SQLException e) {
+                    error = chain(error, e);
+                }
+            }
+        }
+        for (int pollId : polls) {
+            try {
+                responseDAO.reconcileChoiceCounts(pollId);
+            } catch (SQLException e) {
+                error = chain(error, e);
+            }
+        }
+        if (error != null) {
+            if (failure == null) {
+                throw error;
+            }
+            failure.addSuppressed(error);
+        }
+    }
+
+    private static SQLException chain(SQLException first, SQLException next) {
+        if (first == null) {
+            return next;
+        }
+        first.addSuppressed(next);
+        return first;
+    }
+
+    private String insertSql(int rows) {
+        // With one vote per user the rows carry voter_id too, so the database rejects a user's second vote
+        StringBuilder sql = new StringBuilder(skipDuplicates ? "INSERT IGNORE" : "INSERT")
+                .append(onePerUser ? " INTO responses (poll_id, choice_id, user_id, created_at, voter_id) VALUES "
+                        : " INTO responses (poll_id, choice_id, user_id, created_at) VALUES ");
+        String row = onePerUser ? "(?, ?, ?, ?, ?)" : "(?, ?, ?, ?)";
+        for (int i = 0; i < rows; i++) {
+            sql.append(i == 0 ? "" : ", ").append(row);
+        }
+        return sql.toString();
+    }
+
+    private static void parseCsv(String line, Row row) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 3) {
+            throw new IllegalArgumentException("expected poll_id,choice_id,user_id[,created_at]");
+        }
+        row.pollId = Integer.parseInt(fields[0].trim());
+        row.choiceId = Integer.parseInt(fields[1].trim());
+        row.userId = Integer.parseInt(fields[2].trim());
+        row.createdAt = fields.length > 3 && !fields[3].isBlank() ? parseTimestamp(fields[3].trim()) : now();
+    }
+
+    private static void parseJson(String line, Row row) {
+        row.pollId = -1;
+        row.choiceId = -1;
+        row.userId = -1;
+        row.createdAt = null;
+        Matcher m = JSON_FIELD.matcher(line);
+        while (m.find()) {
+            String value = m.group(2);
+            switch (m.group(1)) {
+                case "poll_id":
+                case "pollId":
+                    row.pollId = Integer.parseInt(value);
+                    break;
+                case "choice_id":
+                case "choiceId":
+                    row.choiceId = Integer.parseInt(value);
+                    break;
+                case "user_id":
+                case "userId":
+                    row.userId = Integer.parseInt(value);
+                    break;
+                case "created_at":
+                case "createdAt":
+                    row.createdAt = parseTimestamp(value.replace("\"", ""));
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (row.pollId < 0 || row.choiceId < 0 || row.userId < 0) {
+            throw new IllegalArgumentException("missing poll_id, choice_id or user_id");
+        }
+        if (row.createdAt == null) {
+            row.createdAt = now();
+        }
+    }
+
+    // Accepts "yyyy-MM-dd HH:mm:ss[.f]" or ISO-8601 in local time, ISO-8601 with an offset or 'Z',
+    // or epoch milliseconds
+    private static Timestamp parseTimestamp(String value) {
+        if (value.chars().allMatch(Character::isDigit)) {
+            return new Timestamp(Long.parseLong(value));
+        }
+        String iso = value.replace(' ', 'T');
+        try {
+            return Timestamp.from(OffsetDateTime.parse(iso).toInstant());
+        } catch (DateTimeParseException withoutOffset) {
+            try {
+                return Timestamp.valueOf(LocalDateTime.parse(iso));
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("invalid timestamp " + value, e);
+            }
+        }
+    }
+
+    private static Timestamp now() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+    /**
+     * The fields of the line being parsed, reused for every line.
+     */
+    private static final class Row {
+        private int pollId;
+        private int choiceId;
+        private int userId;
+        private Timestamp createdAt;
+    }
+
+    /**
+     * The rows buffered for one shard, with that shard's connection and full-chunk statement.
+     */
+    private final class ShardChunk implements AutoCloseable {
+        private final DatabaseConnection databaseConnection;
+        private final int[] pollIds = new int[chunkSize];
+        private final int[] choiceIds = new int[chunkSize];
+        private final int[] userIds = new int[chunkSize];
+        private final Timestamp[] createdAt = new Timestamp[chunkSize];
+        private int buffered;
+        private Connection conn;
+        private PreparedStatement fullChunk;
+
+        private ShardChunk(DatabaseConnection databaseConnection) {
+            this.databaseConnection = databaseConnection;
+        }
+
+        /**
+         * Buffers a row and reports whether the chunk is now full.
+         */
+        private boolean add(Row row) {
+            pollIds[buffered] = row.pollId;
+            choiceIds[buffered] = row.choiceId;
+            userIds[buffered] = row.userId;
+            createdAt[buffered] = row.createdAt;
+            return ++buffered == chunkSize;
+        }
+
+        /**
+         * Writes and commits the buffered rows, returning how many were written; with
+         * {@code skipDuplicates} the skipped rows are not included.
+         */
+        private int flush() throws SQLException {
+            if (conn == null) {
+                conn = databaseConnection.getConnection();
+                conn.setAutoCommit(false);
+            }
+            int rows = buffered;
+            int written;
+            if (rows == chunkSize) {
+                if (fullChunk == null) {
+                    fullChunk = conn.prepareStatement(insertSql(chunkSize));
+                }
+                written = writeChunk(fullChunk, rows);
+            } else {
+                try (PreparedStatement lastChunk = conn.prepareStatement(insertSql(rows))) {
+                    written = writeChunk(lastChunk, rows);
+                }
+            }
+            buffered = 0;
+            return written;
+        }
+
+        private int writeChunk(PreparedStatement stmt, int rows) throws SQLException {
+            try (MethodMetrics.Sample sample = IMPORT_CHUNK_METRICS.start()) {
+                int param = 1;
+                for (int i = 0; i < rows; i++) {
+                    stmt.setInt(param++, pollIds[i]);
+                    stmt.setInt(param++, choiceIds[i]);
+                    stmt.setInt(param++, userIds[i]);
+                    stmt.setTimestamp(param++, createdAt[i]);
+                    if (onePerUser) {
+                        stmt.setInt(param++, userIds[i]);
+                    }
+                }
+                int written;
+                try {
+                    written = stmt.executeUpdate();
+                    conn.commit();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+                sample.succeeded(written);
+                return written;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (conn != null) {
+                try {
+                    if (fullChunk != null) {
+                        fullChunk.close();
+                    }
+                } finally {
+                    conn.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.crio.xpoll.dao;
+
+import java.util.List;
+
+import com.crio.xpoll.model.Response;
+
+/**
+ * Receives the responses written by a {@link ResponseDAO} once they are committed.
+ * Listeners run on the writing thread, so they should hand work off rather than block.
+ */
+@FunctionalInterface
+public interface ResponseListener {
+
+    /**
+     * Called after a transaction holding the responses has committed.
+     *
+     * @param responses The committed responses; the list must not be modified.
+     */
+    void onResponsesCommitted(List<Response> responses);
+}
@@ -4,24 +4,56 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MethodMetrics;
 import com.crio.xpoll.model.User;
 import com.crio.xpoll.util.DatabaseConnection;
+import com.crio.xpoll.util.LruCache;
 /**
  * Data Access Object (DAO) for managing users in the XPoll application.
  * Provides methods for creating and retrieving user information.
  */
 public class UserDAO {
 
+    public static final int DEFAULT_CACHE_SIZE = 100_000;
+    public static final long DEFAULT_CACHE_TTL_MILLIS = 600_000;
+
+    // Keeps each IN (...) list well below MySQL's placeholder limit
+    private static final int MAX_IDS_PER_QUERY = 1_000;
+
+    private static final MethodMetrics CREATE_USER_METRICS = DaoMetrics.getInstance().method("UserDAO.createUser");
+    private static final MethodMetrics GET_USER_METRICS = DaoMetrics.getInstance().method("UserDAO.getUserById");
+    private static final MethodMetrics LOAD_USER_METRICS = DaoMetrics.getInstance().method("UserDAO.getUserById.load");
+    private static final MethodMetrics GET_USERS_METRICS = DaoMetrics.getInstance().method("UserDAO.getUsersByIds");
+    private static final MethodMetrics LOAD_USERS_METRICS = DaoMetrics.getInstance().method("UserDAO.getUsersByIds.load");
+
     private final DatabaseConnection databaseConnection;
+    private final LruCache<Integer, User> userCache;
 
     /**
-     * Constructs a UserDAO with the specified DatabaseConnection.
+     * Constructs a UserDAO with the specified DatabaseConnection and a default-sized user cache.
      *
      * @param databaseConnection The DatabaseConnection to be used for database operations.
      */
     public UserDAO(DatabaseConnection databaseConnection) {
+        this(databaseConnection, new LruCache<>(DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL_MILLIS));
+    }
+
+    /**
+     * Constructs a UserDAO with the specified DatabaseConnection and user cache.
+     *
+     * @param databaseConnection The DatabaseConnection to be used for database operations.
+     * @param userCache          The primary-key cache in front of the user lookups.
+     */
+    public UserDAO(DatabaseConnection databaseConnection, LruCache<Integer, User> userCache) {
         this.databaseConnection = databaseConnection;
+        this.userCache = userCache;
     }
     
     /**
@@ -36,7 +68,8 @@ public class UserDAO {
 
         String sql = "INSERT INTO users (username, password) VALUES (?, ?)";
 
-        try (Connection conn = databaseConnection.getConnection();
+        try (MethodMetrics.Sample sample = CREATE_USER_METRICS.start();
+             Connection conn = databaseConnection.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS)) {
 
             stmt.setString(1, username);
@@ -46,7 +79,11 @@ public class UserDAO {
             try (ResultSet generatedKeys = stmt.getGeneratedKeys()) {
                 if (generatedKeys.next()) {
                     int userId = generatedKeys.getInt(1);
-                    return new User(userId, username, password);
+                    sample.succeeded(1);
+                    User user = new User(userId, username, password);
+                    userCache.put(userId, user);
+                    databaseConnection.markWrite(PollDAO.userKey(userId));
+                    return user;
                 } else {
                     throw new SQLException("Creating user failed, no ID obtained.");
                 }
@@ -56,13 +93,115 @@ public class UserDAO {
         
 
     /**
-     * Retrieves a user by their ID.
+     * Retrieves a user by their ID, serving it from the user cache when possible.
+     * Every call is timed as {@code UserDAO.getUserById}, the database reads alone as {@code UserDAO.getUserById.load}.
      *
      * @param userId The ID of the user to retrieve.
      * @return A User object representing the user with the specified ID, or null if no user is found.
      * @throws SQLException If a database error occurs during the retrieval.
      */
     public User getUserById(int userId) throws SQLException {
-        return null;
+        try (MethodMetrics.Sample sample = GET_USER_METRICS.start()) {
+            User cached = userCache.get(userId);
+            User user = cached != null ? cached : loadUser(userId);
+            sample.succeeded(0);
+            return user;
+        }
+    }
+
+    private User loadUser(int userId) throws SQLException {
+
+        String sql = "SELECT id, username, password FROM users WHERE id = ?";
+
+        // A user who just signed up reads from the primary, which already has the row
+        try (MethodMetrics.Sample sample = LOAD_USER_METRICS.start();
+             Connection conn = databaseConnection.getReadConnection(PollDAO.userKey(userId));
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, userId);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                User user = null;
+                if (rs.next()) {
+                    user = new User(rs.getInt(1), rs.getString(2), rs.getString(3));
+                    userCache.put(userId, user);
+                }
+                sample.succeeded(user == null ? 0 : 1);
+                return user;
+            }
+        }
+    }
+
+    /**
+     * Retrieves many users at once. Cached users are served from memory and the rest
+     * are fetched with one {@code IN (...)} query per thousand IDs, each timed as {@code UserDAO.getUsersByIds.load}.
+     *
+     * @param userIds The IDs of the users to retrieve.
+     * @return The users found, keyed by ID in the iteration order of {@code userIds}; missing IDs are absent.
+     * @throws SQLException If a database error occurs during the retrieval.
+     */
+    public Map<Integer, User> getUsersByIds(Collection<Integer> userIds) throws SQLException {
+
+        try (MethodMetrics.Sample sample = GET_USERS_METRICS.start()) {
+            Map<Integer, User> users = new LinkedHashMap<>();
+            List<Integer> missing = new ArrayList<>();
+            for (Integer userId : userIds) {
+                if (users.containsKey(userId)) {
+                    continue;
+                }
+                User cached = userCache.get(userId);
+                users.put(userId, cached);
+                if (cached == null) {
+                    missing.add(userId);
+                }
+            }
+
+            for (int from = 0; from < missing.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = missing.subList(from, Math.min(missing.size(), from + MAX_IDS_PER_QUERY));
+                fetchUsers(chunk, users);
+            }
+
+            users.values().removeIf(user -> user == null);
+            sample.succeeded(0);
+            return users;
+        }
+    }
+
+    public LruCache<Integer, User> getUserCache() {
+        return userCache;
+    }
+
+    private void fetchUsers(List<Integer> userIds, Map<Integer, User> users) throws SQLException {
+
+        StringBuilder sql = new StringBuilder("SELECT id, username, password FROM users WHERE id IN (");
+        for (int i = 0; i < userIds.size(); i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(")");
+
+        List<String> sessionKeys = new ArrayList<>(userIds.size());
+        for (int userId : userIds) {
+            sessionKeys.add(PollDAO.userKey(userId));
+        }
+
+        try (MethodMetrics.Sample sample = LOAD_USERS_METRICS.start();
+             Connection conn = databaseConnection.getReadConnection(sessionKeys);
+             PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+            for (int i = 0; i < userIds.size(); i++) {
+                stmt.setInt(i + 1, userIds.get(i));
+            }
+
+            int rows = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    User user = new User(rs.getInt(1), rs.getString(2), rs.getString(3));
+                    userCache.put(user.getUserId(), user);
+                    users.put(user.getUserId(), user);
+                    rows++;
+                }
+            }
+            sample.succeeded(rows);
+        }
     }
-}
\ No newline at end of file
+}
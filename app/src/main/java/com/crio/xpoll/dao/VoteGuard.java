@@ -0,0 +1,283 @@
+package com.crio.xpoll.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MethodMetrics;
+import com.crio.xpoll.model.Response;
+import com.crio.xpoll.util.BloomFilter;
+import com.crio.xpoll.util.DaoExecutor.SqlCallable;
+import com.crio.xpoll.util.DatabaseConnection;
+import com.crio.xpoll.util.ShardRouter;
+
+/**
+ * Checks one vote per user and poll for a {@link ResponseDAO} before the insert.
+ * The guarantee itself comes from the database: a guarded ResponseDAO sets {@code voter_id} to the user,
+ * and the unique key on {@code (poll_id, voter_id)} rejects a second vote whichever node writes it.
+ * This class turns most repeated votes into that same error without a failed insert.
+ * Each poll gets a Bloom filter of the users who voted in it, loaded from {@code responses} on first use.
+ * A user the filter has never seen cannot have voted through this node since the load, so the vote goes
+ * straight to the insert; only on a possible hit is the {@code (poll_id, user_id)} index queried.
+ * Votes of the same user are serialized by striped locks so two concurrent first votes cannot both pass the check.
+ */
+public class VoteGuard {
+
+    public static final int DEFAULT_EXPECTED_VOTERS = 100_000;
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    public static final int DEFAULT_MAX_POLLS = 1_000;
+
+    private static final int LOCK_STRIPES = 256;
+
+    private static final String HAS_VOTED_SQL = "SELECT 1 FROM responses WHERE poll_id = ? AND user_id = ? LIMIT 1";
+    private static final String VOTERS_SQL = "SELECT user_id FROM responses WHERE poll_id = ?";
+    private static final String CLAIM_VOTERS_SQL = "UPDATE IGNORE responses SET voter_id = user_id WHERE poll_id = ? AND voter_id IS NULL";
+
+    private static final MethodMetrics HAS_VOTED_METRICS = DaoMetrics.getInstance().method("VoteGuard.hasVoted");
+    private static final MethodMetrics LOAD_FILTER_METRICS = DaoMetrics.getInstance().method("VoteGuard.loadFilter");
+
+    private final ShardRouter shardRouter;
+    private final int expectedVoters;
+    private final double falsePositiveRate;
+    private final int maxPolls;
+    private final ConcurrentHashMap<Integer, PollVoters> polls = new ConcurrentHashMap<>();
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final LongAdder checksSkipped = new LongAdder();
+    private final LongAdder checksQueried = new LongAdder();
+
+    /**
+     * Constructs a VoteGuard.
+     *
+     * @param shardRouter       The router that picks the database holding each poll's responses.
+     * @param expectedVoters    The number of voters each poll's filter is sized for; larger polls get larger filters when loaded.
+     * @param falsePositiveRate The share of first votes that still need the index query.
+     * @param maxPolls          The number of polls whose filters are kept; beyond it the least recently used one is dropped.
+     */
+    public VoteGuard(ShardRouter shardRouter, int expectedVoters, double falsePositiveRate, int maxPolls) {
+        this.shardRouter = shardRouter;
+        this.expectedVoters = expectedVoters;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxPolls = maxPolls;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Creates a VoteGuard from the {@code vote.bloom.*} entries, falling back to the defaults for missing keys.
+     */
+    public static VoteGuard fromProperties(ShardRouter shardRouter, Properties properties) {
+        return new VoteGuard(shardRouter,
+                Integer.parseInt(properties.getProperty("vote.bloom.expectedVoters", String.valueOf(DEFAULT_EXPECTED_VOTERS))),
+                Double.parseDouble(properties.getProperty("vote.bloom.falsePositiveRate", String.valueOf(DEFAULT_FALSE_POSITIVE_RATE))),
+                Integer.parseInt(properties.getProperty("vote.bloom.maxPolls", String.valueOf(DEFAULT_MAX_POLLS))));
+    }
+
+    /**
+     * Runs the insert of one vote if the user has not voted in the poll yet.
+     *
+     * @throws SQLIntegrityConstraintViolationException If the user already voted in the poll.
+     */
+    <T> T vote(int pollId, int userId, SqlCallable<T> insert) throws SQLException {
+        ReentrantLock lock = locks[stripe(pollId, userId)];
+        lock.lock();
+        try {
+            BloomFilter voters = votersOf(pollId);
+            checkNotVoted(voters, pollId, userId);
+            T result = insert.call();
+            voters.put(userId);
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs the insert of a batch of votes if none of its users has voted in the respective poll yet.
+     * The batch is rejected as a whole, as it is inserted in one transaction.
+     *
+     * @throws SQLIntegrityConstraintViolationException If a user already voted, or votes twice within the batch.
+     */
+    <T> T voteAll(List<Response> responses, SqlCallable<T> insert) throws SQLException {
+        // Locks are taken in stripe order so concurrent batches cannot deadlock
+        Set<Integer> stripes = new TreeSet<>();
+        Set<Long> seen = new HashSet<>();
+        for (Response response : responses) {
+            if (!seen.add(((long) response.getPollId() << 32) | (response.getUserId() & 0xffffffffL))) {
+                throw alreadyVoted(response.getPollId(), response.getUserId());
+            }
+            stripes.add(stripe(response.getPollId(), response.getUserId()));
+        }
+        List<ReentrantLock> held = new ArrayList<>(stripes.size());
+        try {
+            for (int stripe : stripes) {
+                locks[stripe].lock();
+                held.add(locks[stripe]);
+            }
+            List<BloomFilter> filters = new ArrayList<>(responses.size());
+            for (Response response : responses) {
+                BloomFilter voters = votersOf(response.getPollId());
+                checkNotVoted(voters, response.getPollId(), response.getUserId());
+                filters.add(voters);
+            }
+            T result = insert.call();
+            for (int i = 0; i < responses.size(); i++) {
+                filters.get(i).put(responses.get(i).getUserId());
+            }
+            return result;
+        } finally {
+            for (ReentrantLock lock : held) {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns how many votes skipped the index query because the filter ruled out an earlier vote.
+     */
+    public long getChecksSkipped() {
+        return checksSkipped.sum();
+    }
+
+    /**
+     * Returns how many votes needed the index query.
+     */
+    public long getChecksQueried() {
+        return checksQueried.sum();
+    }
+
+    private void checkNotVoted(BloomFilter voters, int pollId, int userId) throws SQLException {
+        if (!voters.mightContain(userId)) {
+            checksSkipped.increment();
+            return;
+        }
+        checksQueried.increment();
+        if (hasVoted(pollId, userId)) {
+            throw alreadyVoted(pollId, userId);
+        }
+    }
+
+    private boolean hasVoted(int pollId, int userId) throws SQLException {
+        // Always the primary of the shard: a replica may not have the previous vote yet
+        try (MethodMetrics.Sample sample = HAS_VOTED_METRICS.start();
+             Connection conn = shardRouter.forPoll(pollId).getConnection();
+             PreparedStatement stmt = conn.prepareStatement(HAS_VOTED_SQL)) {
+            stmt.setInt(1, pollId);
+            stmt.setInt(2, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                boolean voted = rs.next();
+                sample.succeeded(voted ? 1 : 0);
+                return voted;
+            }
+        }
+    }
+
+    /**
+     * Returns the poll's filter, loading it on first use and dropping the least recently used filter
+     * once {@code maxPolls} exist. A dropped filter is simply loaded again on the poll's next vote.
+     * Callers hold their user's lock, and every guarded vote obtains the filter before inserting,
+     * so no guarded vote can commit between the load and the filter becoming visible.
+     */
+    private BloomFilter votersOf(int pollId) throws SQLException {
+        PollVoters holder = polls.get(pollId);
+        if (holder == null) {
+            if (polls.size() >= maxPolls) {
+                evictLeastRecentlyUsed();
+            }
+            holder = polls.computeIfAbsent(pollId, k -> new PollVoters());
+        }
+        holder.lastUsed = System.nanoTime();
+        BloomFilter filter = holder.filter;
+        if (filter == null) {
+            synchronized (holder) {
+                filter = holder.filter;
+                if (filter == null) {
+                    filter = loadVoters(pollId);
+                    holder.filter = filter;
+                }
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Removes the filter that was used longest ago. A scan is enough, as it only runs before a filter load,
+     * which reads the poll's whole voter list anyway.
+     */
+    private void evictLeastRecentlyUsed() {
+        Integer oldestPoll = null;
+        PollVoters oldest = null;
+        for (Map.Entry<Integer, PollVoters> entry : polls.entrySet()) {
+            PollVoters candidate = entry.getValue();
+            if (oldest == null || candidate.lastUsed - oldest.lastUsed < 0) {
+                oldestPoll = entry.getKey();
+                oldest = candidate;
+            }
+        }
+        if (oldest != null) {
+            polls.remove(oldestPoll, oldest);
+        }
+    }
+
+    private BloomFilter loadVoters(int pollId) throws SQLException {
+        DatabaseConnection shard = shardRouter.forPoll(pollId);
+        try (MethodMetrics.Sample sample = LOAD_FILTER_METRICS.start();
+             Connection conn = shard.getConnection();
+             PreparedStatement claimStmt = conn.prepareStatement(CLAIM_VOTERS_SQL);
+             PreparedStatement stmt = conn.prepareStatement(VOTERS_SQL)) {
+            // Votes written before the poll was guarded, or without a guard, get the unique voter key too.
+            // A user's further votes on the poll would collide and keep a NULL voter_id
+            claimStmt.setInt(1, pollId);
+            claimStmt.executeUpdate();
+            stmt.setInt(1, pollId);
+
+            int[] userIds = new int[64];
+            int count = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (count == userIds.length) {
+                        userIds = Arrays.copyOf(userIds, count * 2);
+                    }
+                    userIds[count++] = rs.getInt(1);
+                }
+            }
+            // Leave room for the poll to double before the false-positive rate degrades
+            BloomFilter filter = new BloomFilter(Math.max(expectedVoters, count * 2), falsePositiveRate);
+            for (int i = 0; i < count; i++) {
+                filter.put(userIds[i]);
+            }
+            sample.succeeded(count);
+            return filter;
+        }
+    }
+
+    private static int stripe(int pollId, int userId) {
+        int h = pollId * 31 + userId;
+        h ^= h >>> 16;
+        return Math.floorMod(h * 0x9E3779B9, LOCK_STRIPES);
+    }
+
+    private static SQLIntegrityConstraintViolationException alreadyVoted(int pollId, int userId) {
+        return new SQLIntegrityConstraintViolationException(
+                "User " + userId + " has already voted in poll " + pollId, "23000");
+    }
+
+    private static final class PollVoters {
+        private volatile BloomFilter filter;
+        private volatile long lastUsed;
+    }
+}
@@ -0,0 +1,359 @@
+package com.crio.xpoll.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MethodMetrics;
+import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.Response;
+import com.crio.xpoll.util.DatabaseConnection;
+import com.crio.xpoll.util.ShardRouter;
+
+/**
+ * The "fast tally" vote counters. Votes on the polls of the shards this node owns are counted in
+ * striped in-memory counters instead of updating {@code choice_counts} inside every vote's transaction,
+ * and {@link PollDAO} answers their counts from memory.
+ *
+ * <p>{@code choice_counts} is brought up to date by a background checkpoint that adds the responses
+ * created in {@code (previous checkpoint, now - safety lag]} and moves the shard's {@code tally_checkpoints}
+ * row forward in the same transaction. Because the checkpoint is derived from {@code responses} rather
+ * than from memory, a crash loses nothing: on start the counters are rebuilt from the checkpointed counts
+ * plus the responses created after the checkpoint.
+ *
+ * <p>The safety lag must exceed the longest time between stamping a response's {@code created_at} and
+ * committing it, otherwise a late commit falls behind the checkpoint and is only counted by a reconcile.
+ * In this mode every vote on an owned poll must go through this node, as other writers' votes reach the
+ * in-memory counters only after a restart.
+ */
+public class VoteTally implements AutoCloseable {
+
+    public static final long DEFAULT_CHECKPOINT_INTERVAL_MILLIS = 1_000;
+    public static final long DEFAULT_SAFETY_LAG_MILLIS = 5_000;
+
+    private static final String CHECKPOINT_SQL = "SELECT checkpoint_at FROM tally_checkpoints WHERE id = 1";
+
+    // created_at is a TIMESTAMP, stored to the second, so the windows are whole seconds
+    private static final String ADD_WINDOW_SQL = "INSERT INTO choice_counts (choice_id, poll_id, response_count) "
+            + "SELECT choice_id, poll_id, COUNT(*) FROM responses WHERE created_at > ? AND created_at <= ? "
+            + "GROUP BY choice_id, poll_id "
+            + "ON DUPLICATE KEY UPDATE response_count = response_count + VALUES(response_count)";
+
+    private static final String REBUILD_SQL = "INSERT INTO choice_counts (choice_id, poll_id, response_count) "
+            + "SELECT choice_id, poll_id, COUNT(*) FROM responses WHERE created_at <= ? GROUP BY choice_id, poll_id";
+
+    private static final MethodMetrics CHECKPOINT_METRICS = DaoMetrics.getInstance().method("VoteTally.checkpoint");
+    private static final MethodMetrics LOAD_METRICS = DaoMetrics.getInstance().method("VoteTally.load");
+
+    private final ShardRouter shardRouter;
+    private final boolean[] ownedShards;
+    private final long checkpointIntervalMillis;
+    private final long safetyLagMillis;
+    private final ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, LongAdder>> counts = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService checkpointer;
+    private volatile boolean started;
+
+    /**
+     * Constructs a VoteTally. The counters are empty until {@link #start()} loads them.
+     *
+     * @param shardRouter              The shards holding responses and counters.
+     * @param ownedShards              The shard numbers whose polls this node counts, or null for all shards.
+     * @param checkpointIntervalMillis How often the counters are checkpointed to {@code choice_counts}.
+     * @param safetyLagMillis          How far behind the clock a checkpoint stops, to leave room for in-flight commits.
+     */
+    public VoteTally(ShardRouter shardRouter, Set<Integer> ownedShards, long checkpointIntervalMillis, long safetyLagMillis) {
+        this.shardRouter = shardRouter;
+        this.ownedShards = new boolean[shardRouter.size()];
+        for (int shard = 0; shard < shardRouter.size(); shard++) {
+            this.ownedShards[shard] = ownedShards == null || ownedShards.contains(shard);
+        }
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+        this.safetyLagMillis = safetyLagMillis;
+        this.checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "xpoll-tally-checkpoint");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Creates a VoteTally from the {@code tally.*} entries, falling back to the defaults for missing keys.
+     * {@code tally.ownedShards} is a comma-separated list of shard numbers; empty means every shard.
+     */
+    public static VoteTally fromProperties(ShardRouter shardRouter, Properties properties) {
+        Set<Integer> owned = null;
+        String ownedList = properties.getProperty("tally.ownedShards", "");
+        if (!ownedList.isBlank()) {
+            owned = new TreeSet<>();
+            for (String shard : ownedList.split(",")) {
+                owned.add(Integer.parseInt(shard.trim()));
+            }
+        }
+        return new VoteTally(shardRouter, owned,
+                Long.parseLong(properties.getProperty("tally.checkpointIntervalMillis", String.valueOf(DEFAULT_CHECKPOINT_INTERVAL_MILLIS))),
+                Long.parseLong(properties.getProperty("tally.safetyLagMillis", String.valueOf(DEFAULT_SAFETY_LAG_MILLIS))));
+    }
+
+    /**
+     * Loads the counters of the owned shards and starts the checkpointer.
+     * Call once the schema is in place and before votes are accepted.
+     *
+     * @throws SQLException If the counters cannot be loaded.
+     */
+    public synchronized void start() throws SQLException {
+        if (started) {
+            return;
+        }
+        for (int shard = 0; shard < ownedShards.length; shard++) {
+            if (ownedShards[shard]) {
+                load(shardRouter.all().get(shard));
+            }
+        }
+        started = true;
+        checkpointer.scheduleWithFixedDelay(() -> {
+            try {
+                checkpoint();
+            } catch (SQLException e) {
+                // The window stays open and is picked up by the next run
+                e.printStackTrace();
+            }
+        }, checkpointIntervalMillis, checkpointIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns whether this node counts the poll's votes in memory.
+     */
+    public boolean owns(int pollId) {
+        return started && ownedShards[shardRouter.shardOf(pollId)];
+    }
+
+    /**
+     * Returns the in-memory response count of every choice of an owned poll that has responses.
+     *
+     * @param pollId The ID of the poll; see {@link #owns(int)}.
+     * @return The counts keyed by choice ID.
+     */
+    public Map<Integer, Long> getCounts(int pollId) {
+        ConcurrentHashMap<Integer, LongAdder> poll = counts.get(pollId);
+        if (poll == null) {
+            return Collections.emptyMap();
+        }
+        Map<Integer, Long> result = new TreeMap<>();
+        poll.forEach((choiceId, count) -> result.put(choiceId, count.sum()));
+        return result;
+    }
+
+    /**
+     * Reads the in-memory counts of an owned poll's choices into an array aligned with the poll's choices.
+     */
+    long[] getCounts(Poll poll) {
+        long[] result = new long[poll.getChoices().size()];
+        ConcurrentHashMap<Integer, LongAdder> choices = counts.get(poll.getId());
+        if (choices != null) {
+            for (int i = 0; i < result.length; i++) {
+                LongAdder count = choices.get(poll.getChoices().get(i).getId());
+                result[i] = count == null ? 0 : count.sum();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Counts committed responses; responses on polls this node does not own are ignored.
+     */
+    void record(List<Response> responses) {
+        for (Response response : responses) {
+            record(response.getPollId(), response.getChoiceId());
+        }
+    }
+
+    void record(int pollId, int choiceId) {
+        if (owns(pollId)) {
+            counter(pollId, choiceId).increment();
+        }
+    }
+
+    /**
+     * Adds the responses created since the last checkpoint, up to the safety lag, to
+     * {@code choice_counts} on every owned shard. A shard without a checkpoint, e.g. after
+     * a reconcile, has its counters rebuilt from all responses up to the safety lag instead.
+     *
+     * @throws SQLException If a shard cannot be checkpointed; the shards before it stay checkpointed.
+     */
+    public void checkpoint() throws SQLException {
+        // Whole seconds, matching the precision created_at is stored with
+        Timestamp upTo = new Timestamp((System.currentTimeMillis() - safetyLagMillis) / 1000 * 1000);
+        for (int shard = 0; shard < ownedShards.length; shard++) {
+            if (ownedShards[shard]) {
+                checkpoint(shardRouter.all().get(shard), upTo);
+            }
+        }
+    }
+
+    /**
+     * Replaces the in-memory counters of a poll, or of every owned poll on a shard, with a fresh
+     * count of its responses. Used after a reconcile. The fresh counters are built aside and swapped
+     * in per poll, so a vote is never counted both by the query and by the counters it replaces;
+     * a vote recorded while the query runs may be missed until the next reload or restart.
+     */
+    void reload(DatabaseConnection shard, Integer pollId) throws SQLException {
+        if (!started) {
+            return;
+        }
+        String sql = "SELECT choice_id, poll_id, COUNT(*) FROM responses"
+                + (pollId == null ? "" : " WHERE poll_id = ?") + " GROUP BY choice_id, poll_id";
+
+        Map<Integer, ConcurrentHashMap<Integer, LongAdder>> fresh = new HashMap<>();
+        try (Connection conn = shard.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (pollId != null) {
+                stmt.setInt(1, pollId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    LongAdder counter = new LongAdder();
+                    counter.add(rs.getLong(3));
+                    fresh.computeIfAbsent(rs.getInt(2), k -> new ConcurrentHashMap<>()).put(rs.getInt(1), counter);
+                }
+            }
+        }
+
+        if (pollId != null) {
+            ConcurrentHashMap<Integer, LongAdder> pollCounts = fresh.get(pollId);
+            if (pollCounts != null) {
+                counts.put(pollId, pollCounts);
+            } else {
+                counts.remove(pollId);
+            }
+        } else {
+            counts.keySet().removeIf(id -> shardRouter.forPoll(id) == shard && !fresh.containsKey(id));
+            counts.putAll(fresh);
+        }
+    }
+
+    @Override
+    public void close() {
+        checkpointer.shutdownNow();
+    }
+
+    private LongAdder counter(int pollId, int choiceId) {
+        return counts.computeIfAbsent(pollId, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(choiceId, k -> new LongAdder());
+    }
+
+    private void checkpoint(DatabaseConnection shard, Timestamp upTo) throws SQLException {
+
+        try (MethodMetrics.Sample sample = CHECKPOINT_METRICS.start();
+             Connection conn = shard.getConnection();
+             PreparedStatement checkpointStmt = conn.prepareStatement(CHECKPOINT_SQL + " FOR UPDATE")) {
+
+            conn.setAutoCommit(false);
+            try {
+                Timestamp previous = null;
+                try (ResultSet rs = checkpointStmt.executeQuery()) {
+                    if (rs.next()) {
+                        previous = rs.getTimestamp(1);
+                    }
+                }
+
+                int rows;
+                if (previous == null) {
+                    try (PreparedStatement deleteStmt = conn.prepareStatement("DELETE FROM choice_counts");
+                         PreparedStatement rebuildStmt = conn.prepareStatement(REBUILD_SQL);
+                         PreparedStatement markStmt = conn.prepareStatement(
+                                 "INSERT INTO tally_checkpoints (id, checkpoint_at) VALUES (1, ?)")) {
+                        deleteStmt.executeUpdate();
+                        rebuildStmt.setTimestamp(1, upTo);
+                        rows = rebuildStmt.executeUpdate();
+                        markStmt.setTimestamp(1, upTo);
+                        markStmt.executeUpdate();
+                    }
+                } else if (upTo.after(previous)) {
+                    try (PreparedStatement addStmt = conn.prepareStatement(ADD_WINDOW_SQL);
+                         PreparedStatement markStmt = conn.prepareStatement(
+                                 "UPDATE tally_checkpoints SET checkpoint_at = ? WHERE id = 1")) {
+                        addStmt.setTimestamp(1, previous);
+                        addStmt.setTimestamp(2, upTo);
+                        rows = addStmt.executeUpdate();
+                        markStmt.setTimestamp(1, upTo);
+                        markStmt.executeUpdate();
+                    }
+                } else {
+                    rows = 0;
+                }
+                conn.commit();
+                sample.succeeded(rows);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Loads a shard's counters as the checkpointed counts plus the responses created after the
+     * checkpoint, reading both from one snapshot so a concurrent checkpoint cannot skew them.
+     */
+    private void load(DatabaseConnection shard) throws SQLException {
+
+        try (MethodMetrics.Sample sample = LOAD_METRICS.start();
+             Connection conn = shard.getConnection()) {
+
+            // InnoDB's default REPEATABLE READ gives every read in the transaction the same snapshot
+            conn.setAutoCommit(false);
+            try {
+                Timestamp checkpointAt = null;
+                try (PreparedStatement stmt = conn.prepareStatement(CHECKPOINT_SQL);
+                     ResultSet rs = stmt.executeQuery()) {
+                    if (rs.next()) {
+                        checkpointAt = rs.getTimestamp(1);
+                    }
+                }
+
+                int rows = 0;
+                if (checkpointAt != null) {
+                    rows += addCounts(conn, "SELECT choice_id, poll_id, response_count FROM choice_counts", null);
+                }
+                rows += addCounts(conn, "SELECT choice_id, poll_id, COUNT(*) FROM responses"
+                        + (checkpointAt == null ? "" : " WHERE created_at > ?") + " GROUP BY choice_id, poll_id", checkpointAt);
+                conn.commit();
+                sample.succeeded(rows);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private int addCounts(Connection conn, String sql, Timestamp after) throws SQLException {
+        int rows = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (after != null) {
+                stmt.setTimestamp(1, after);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    counter(rs.getInt(2), rs.getInt(1)).add(rs.getLong(3));
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,194 @@
+package com.crio.xpoll.live;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.crio.xpoll.dao.ResponseListener;
+import com.crio.xpoll.model.Response;
+
+/**
+ * In-process pub/sub for live poll results.
+ * Registered as a {@link ResponseListener}, it counts committed votes per choice for the polls that
+ * have subscribers and, once per publish interval, folds them into the poll's totals and pushes one
+ * shared {@link PollUpdate} to every subscriber. The totals are loaded from the database only when a
+ * poll gets its first subscriber, so the database load does not grow with the number of viewers.
+ *
+ * <p>Votes committed while that first snapshot loads may be counted twice or missed. The totals are
+ * meant for display; once a poll's last viewer leaves they are dropped and reloaded for the next one.
+ */
+public class LiveResultsPublisher implements ResponseListener, AutoCloseable {
+
+    public static final long DEFAULT_PUBLISH_INTERVAL_MILLIS = 250;
+
+    /**
+     * Loads the current response count of every choice of a poll, keyed by choice ID.
+     */
+    @FunctionalInterface
+    public interface CountsLoader {
+        Map<Integer, Long> load(int pollId) throws SQLException;
+    }
+
+    /**
+     * A registration returned by {@link #subscribe}; closing it stops the updates.
+     */
+    public interface Subscription extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final CountsLoader loader;
+    private final ConcurrentHashMap<Integer, Topic> topics = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Constructs a LiveResultsPublisher.
+     *
+     * @param loader                The source of a poll's totals when it gets its first subscriber.
+     * @param publishIntervalMillis How often pending votes are folded in and pushed to subscribers.
+     */
+    public LiveResultsPublisher(CountsLoader loader, long publishIntervalMillis) {
+        this.loader = loader;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "xpoll-live-publisher");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleAtFixedRate(this::publish, publishIntervalMillis, publishIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Subscribes to a poll's totals. The listener immediately receives the current totals,
+     * then one update per publish interval in which the poll received votes.
+     *
+     * @param pollId   The ID of the poll to follow.
+     * @param listener The listener to call with each update.
+     * @return The subscription, to be closed when the listener is no longer interested.
+     * @throws SQLException If the poll's totals have to be loaded and cannot be.
+     */
+    public Subscription subscribe(int pollId, PollUpdateListener listener) throws SQLException {
+        Topic topic = topics.compute(pollId, (id, existing) -> {
+            Topic t = existing == null ? new Topic(id) : existing;
+            t.subscribers.add(listener);
+            return t;
+        });
+        Subscription subscription = () -> topic.subscribers.remove(listener);
+        try {
+            listener.onUpdate(topic.snapshot());
+        } catch (SQLException | RuntimeException e) {
+            subscription.close();
+            throw e;
+        }
+        return subscription;
+    }
+
+    /**
+     * Returns the number of polls that currently have subscribers.
+     */
+    public int getTopicCount() {
+        return topics.size();
+    }
+
+    @Override
+    public void onResponsesCommitted(List<Response> responses) {
+        for (Response response : responses) {
+            Topic topic = topics.get(response.getPollId());
+            if (topic != null) {
+                topic.pending.computeIfAbsent(response.getChoiceId(), k -> new LongAdder()).increment();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        topics.clear();
+    }
+
+    private void publish() {
+        long now = System.currentTimeMillis();
+        for (Topic topic : topics.values()) {
+            if (topic.subscribers.isEmpty()) {
+                // Dropped only if still unused, so a concurrent subscribe keeps its topic
+                topics.computeIfPresent(topic.pollId, (id, t) -> t.subscribers.isEmpty() ? null : t);
+                continue;
+            }
+            PollUpdate update = topic.fold(now);
+            if (update == null) {
+                continue;
+            }
+            for (PollUpdateListener listener : topic.subscribers) {
+                try {
+                    listener.onUpdate(update);
+                } catch (RuntimeException e) {
+                    // One broken subscriber must not starve the others
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * The subscribers, pending votes and totals of one poll.
+     */
+    private final class Topic {
+        private final int pollId;
+        private final CopyOnWriteArrayList<PollUpdateListener> subscribers = new CopyOnWriteArrayList<>();
+        private final ConcurrentHashMap<Integer, LongAdder> pending = new ConcurrentHashMap<>();
+        private volatile PollUpdate latest;
+
+        private Topic(int pollId) {
+            this.pollId = pollId;
+        }
+
+        /**
+         * Returns the current totals, loading them on first use.
+         */
+        private PollUpdate snapshot() throws SQLException {
+            PollUpdate current = latest;
+            if (current != null) {
+                return current;
+            }
+            synchronized (this) {
+                if (latest == null) {
+                    // Votes counted so far are part of what the loader is about to read
+                    pending.clear();
+                    latest = new PollUpdate(pollId, new TreeMap<>(loader.load(pollId)), System.currentTimeMillis());
+                }
+                return latest;
+            }
+        }
+
+        /**
+         * Folds the pending votes into the totals, returning null if there were none.
+         */
+        private synchronized PollUpdate fold(long now) {
+            if (latest == null) {
+                return null;
+            }
+            SortedMap<Integer, Long> totals = null;
+            for (Map.Entry<Integer, LongAdder> entry : pending.entrySet()) {
+                long delta = entry.getValue().sumThenReset();
+                if (delta != 0) {
+                    if (totals == null) {
+                        totals = new TreeMap<>(latest.getCounts());
+                    }
+                    totals.merge(entry.getKey(), delta, Long::sum);
+                }
+            }
+            if (totals == null) {
+                return null;
+            }
+            latest = new PollUpdate(pollId, totals, now);
+            return latest;
+        }
+    }
+}
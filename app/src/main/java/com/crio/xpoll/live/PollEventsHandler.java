@@ -0,0 +1,96 @@
+package com.crio.xpoll.live;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * Streams a poll's live totals as Server-Sent Events on {@code GET <context>/{pollId}/events}.
+ * Each connection receives the current totals first and then a {@code counts} event per published
+ * update; a slow client skips straight to the latest totals instead of queueing behind old ones.
+ *
+ * <p>Every open stream occupies a thread of the server's executor for as long as the client stays.
+ */
+public class PollEventsHandler implements HttpHandler {
+
+    private static final long HEARTBEAT_MILLIS = 15_000;
+    private static final byte[] HEARTBEAT = ": keepalive\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final LiveResultsPublisher publisher;
+
+    public PollEventsHandler(LiveResultsPublisher publisher) {
+        this.publisher = publisher;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            int pollId = parsePollId(exchange.getRequestURI().getPath());
+            if (pollId < 0) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            stream(exchange, pollId);
+        }
+    }
+
+    private void stream(HttpExchange exchange, int pollId) throws IOException {
+        // Holds only the newest update: the publisher never blocks on this client
+        BlockingQueue<PollUpdate> latest = new ArrayBlockingQueue<>(1);
+        LiveResultsPublisher.Subscription subscription;
+        try {
+            subscription = publisher.subscribe(pollId, update -> {
+                while (!latest.offer(update)) {
+                    latest.poll();
+                }
+            });
+        } catch (SQLException e) {
+            exchange.sendResponseHeaders(503, -1);
+            return;
+        }
+
+        try (subscription) {
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            while (true) {
+                PollUpdate update = latest.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                // A write to a client that went away fails and ends the stream
+                out.write(update == null ? HEARTBEAT : event(update));
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] event(PollUpdate update) {
+        return ("event: counts\ndata: " + update.toJson() + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Expects .../{pollId}/events
+    private static int parsePollId(String path) {
+        String[] segments = path.split("/");
+        if (segments.length < 2 || !"events".equals(segments[segments.length - 1])) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(segments[segments.length - 2]);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
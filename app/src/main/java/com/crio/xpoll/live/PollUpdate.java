@@ -0,0 +1,69 @@
+package com.crio.xpoll.live;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * The running totals of one poll as published by {@link LiveResultsPublisher}.
+ * Instances are shared by every subscriber of the poll, so the JSON form is built once.
+ */
+public final class PollUpdate {
+
+    private final int pollId;
+    private final SortedMap<Integer, Long> counts;
+    private final long publishedAt;
+    private volatile String json;
+
+    PollUpdate(int pollId, SortedMap<Integer, Long> counts, long publishedAt) {
+        this.pollId = pollId;
+        this.counts = Collections.unmodifiableSortedMap(counts);
+        this.publishedAt = publishedAt;
+    }
+
+    public int getPollId() {
+        return pollId;
+    }
+
+    /**
+     * Returns the response count of every choice that has responses, keyed by choice ID in ascending order.
+     */
+    public Map<Integer, Long> getCounts() {
+        return counts;
+    }
+
+    public long getCount(int choiceId) {
+        return counts.getOrDefault(choiceId, 0L);
+    }
+
+    public long getPublishedAt() {
+        return publishedAt;
+    }
+
+    /**
+     * Returns {@code {"pollId":1,"counts":{"3":10,"4":2},"publishedAt":1700000000000}}.
+     */
+    public String toJson() {
+        String result = json;
+        if (result == null) {
+            StringBuilder sb = new StringBuilder(32 + counts.size() * 16)
+                    .append("{\"pollId\":").append(pollId).append(",\"counts\":{");
+            boolean first = true;
+            for (Map.Entry<Integer, Long> entry : counts.entrySet()) {
+                if (!first) {
+                    sb.append(',');
+                }
+                sb.append('"').append(entry.getKey()).append("\":").append(entry.getValue());
+                first = false;
+            }
+            result = sb.append("},\"publishedAt\":").append(publishedAt).append('}').toString();
+            json = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+}
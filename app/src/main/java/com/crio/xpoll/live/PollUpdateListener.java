@@ -0,0 +1,11 @@
+package com.crio.xpoll.live;
+
+/**
+ * Receives the coalesced totals of a subscribed poll.
+ * Called on the publisher thread, so implementations should return quickly.
+ */
+@FunctionalInterface
+public interface PollUpdateListener {
+
+    void onUpdate(PollUpdate update);
+}
@@ -0,0 +1,72 @@
+package com.crio.xpoll.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide registry of {@link MethodMetrics}, one per instrumented DAO method.
+ * Every entry is also registered as an MXBean under {@code com.crio.xpoll:type=DaoMetrics}.
+ */
+public class DaoMetrics {
+
+    private static final DaoMetrics INSTANCE = new DaoMetrics();
+
+    private final Map<String, MethodMetrics> methods = new ConcurrentSkipListMap<>();
+
+    private DaoMetrics() {
+    }
+
+    public static DaoMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the metrics for the named method, creating and registering them on first use.
+     * Callers keep the result in a static field so the hot path never does the lookup.
+     */
+    public MethodMetrics method(String name) {
+        return methods.computeIfAbsent(name, n -> {
+            MethodMetrics metrics = new MethodMetrics(n);
+            registerMXBean(metrics);
+            return metrics;
+        });
+    }
+
+    public Map<String, MethodMetrics> getMethods() {
+        return methods;
+    }
+
+    public String toText() {
+        StringJoiner joiner = new StringJoiner(System.lineSeparator());
+        for (MethodMetrics metrics : methods.values()) {
+            joiner.add(metrics.toText());
+        }
+        return joiner.toString();
+    }
+
+    public String toJson() {
+        StringJoiner joiner = new StringJoiner(",", "[", "]");
+        for (MethodMetrics metrics : methods.values()) {
+            joiner.add(metrics.toJson());
+        }
+        return joiner.toString();
+    }
+
+    private static void registerMXBean(MethodMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("com.crio.xpoll:type=DaoMetrics,name=" + ObjectName.quote(metrics.getName()));
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(metrics, objectName);
+            }
+        } catch (JMException | SecurityException e) {
+            // Metrics still work without JMX
+        }
+    }
+}
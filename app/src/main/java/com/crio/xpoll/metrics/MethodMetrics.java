@@ -0,0 +1,144 @@
+package com.crio.xpoll.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count, error count, latency histogram and rows touched for one DAO method.
+ * Typical use wraps the method body:
+ * <pre>
+ * try (MethodMetrics.Sample sample = GET_POLL_METRICS.start()) {
+ *     ...
+ *     sample.succeeded(rows);
+ * }
+ * </pre>
+ * A sample that is closed without {@link Sample#succeeded(long)} counts as an error.
+ */
+public class MethodMetrics implements MethodMetricsMXBean {
+
+    private final String name;
+    private final Histogram latencyNanos = new Histogram();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+
+    MethodMetrics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Sample start() {
+        return new Sample(this, System.nanoTime());
+    }
+
+    /**
+     * Records a latency measured elsewhere, e.g. the wait for a pooled connection.
+     */
+    public void recordNanos(long nanos) {
+        latencyNanos.record(nanos);
+    }
+
+    public Histogram getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    @Override
+    public long getCalls() {
+        return latencyNanos.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return latencyNanos.getMean() / 1_000.0;
+    }
+
+    @Override
+    public long getP50Micros() {
+        return toMicros(latencyNanos.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getP99Micros() {
+        return toMicros(latencyNanos.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getP999Micros() {
+        return toMicros(latencyNanos.getValueAtPercentile(99.9));
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return toMicros(latencyNanos.getMax());
+    }
+
+    @Override
+    public void reset() {
+        latencyNanos.reset();
+        errors.reset();
+        rows.reset();
+    }
+
+    String toText() {
+        return String.format(Locale.ROOT, "%-36s calls=%d errors=%d rows=%d mean=%.1fus p50=%dus p99=%dus p999=%dus max=%dus",
+                name, getCalls(), getErrors(), getRows(), getMeanMicros(),
+                getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+
+    String toJson() {
+        return String.format(Locale.ROOT,
+                "{\"name\":\"%s\",\"calls\":%d,\"errors\":%d,\"rows\":%d,\"meanMicros\":%.1f,"
+                        + "\"p50Micros\":%d,\"p99Micros\":%d,\"p999Micros\":%d,\"maxMicros\":%d}",
+                name, getCalls(), getErrors(), getRows(), getMeanMicros(),
+                getP50Micros(), getP99Micros(), getP999Micros(), getMaxMicros());
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * One timed call.
+     */
+    public static final class Sample implements AutoCloseable {
+        private final MethodMetrics metrics;
+        private final long startNanos;
+        private boolean succeeded;
+
+        private Sample(MethodMetrics metrics, long startNanos) {
+            this.metrics = metrics;
+            this.startNanos = startNanos;
+        }
+
+        /**
+         * Marks the call as successful.
+         *
+         * @param rowCount The number of rows the call read or wrote.
+         */
+        public void succeeded(long rowCount) {
+            succeeded = true;
+            metrics.rows.add(rowCount);
+        }
+
+        @Override
+        public void close() {
+            metrics.latencyNanos.record(System.nanoTime() - startNanos);
+            if (!succeeded) {
+                metrics.errors.increment();
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.crio.xpoll.metrics;
+
+/**
+ * JMX view of the metrics recorded for one DAO method. Latencies are in microseconds.
+ */
+public interface MethodMetricsMXBean {
+
+    long getCalls();
+
+    long getErrors();
+
+    long getRows();
+
+    double getMeanMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,36 @@
+package com.crio.xpoll.metrics;
+
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically prints the DAO metrics as text or as one JSON line.
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "xpoll-metrics-reporter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Starts reporting.
+     *
+     * @param metrics         The registry to report.
+     * @param out             Where each report is printed.
+     * @param json            Whether to print JSON instead of text.
+     * @param intervalSeconds The delay between reports.
+     */
+    public MetricsReporter(DaoMetrics metrics, PrintStream out, boolean json, long intervalSeconds) {
+        scheduler.scheduleAtFixedRate(() -> out.println(json ? metrics.toJson() : metrics.toText()),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
@@ -1,9 +1,9 @@
 package com.crio.xpoll.model;
 
-public class Choice {
-    private int id;
-    private int pollId;
-    private String choiceText;
+public final class Choice {
+    private final int id;
+    private final int pollId;
+    private final String choiceText;
 
     public Choice(int id, int pollId, String choiceText) {
         this.id = id;
@@ -2,27 +2,33 @@ package com.crio.xpoll.model;
 
 import java.util.List;
 
-public class Poll {
-    private int id;
-    private int userId;
-    private String question;
-    private boolean isClosed;
-    private List<Choice> choices;
+public final class Poll {
+    private final int id;
+    private final int userId;
+    private final String question;
+    private final boolean isClosed;
+    private final List<Choice> choices;
+
+    // The choices as parallel arrays, shared by every PollResults of this poll
+    private final int[] choiceIds;
+    private final String[] choiceTexts;
 
     public Poll(int id, int userId, String question, List<Choice> choices, boolean isClosed) {
         this.id = id;
         this.userId = userId;
         this.question = question;
-        this.choices = choices;
+        this.choices = List.copyOf(choices);
         this.isClosed = isClosed;
+        this.choiceIds = new int[this.choices.size()];
+        this.choiceTexts = new String[this.choices.size()];
+        for (int i = 0; i < choiceIds.length; i++) {
+            choiceIds[i] = this.choices.get(i).getId();
+            choiceTexts[i] = this.choices.get(i).getChoiceText();
+        }
     }
 
     public Poll(int id, int userId, String question, List<Choice> choices) {
-        this.id = id;
-        this.userId = userId;
-        this.question = question;
-        this.choices = choices;
-        this.isClosed = false;
+        this(id, userId, question, choices, false);
     }
 
     public int getId() {
@@ -44,6 +50,25 @@ public class Poll {
     public boolean isClosed() {
         return isClosed;
     }
+
+    /**
+     * Returns the position of a choice in {@link #getChoices()}, or -1 if the poll has no such choice.
+     */
+    public int indexOfChoice(int choiceId) {
+        for (int i = 0; i < choiceIds.length; i++) {
+            if (choiceIds[i] == choiceId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    int[] choiceIds() {
+        return choiceIds;
+    }
+
+    String[] choiceTexts() {
+        return choiceTexts;
+    }
     
 }
-
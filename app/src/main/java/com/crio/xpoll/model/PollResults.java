@@ -0,0 +1,87 @@
+package com.crio.xpoll.model;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * The response counts of a poll's choices. The question is held once and the choice IDs and texts
+ * are the poll's own arrays, so a read only allocates this object and its {@code counts} array.
+ * Choices are indexed in the order of {@link Poll#getChoices()}.
+ */
+public final class PollResults {
+    private final int pollId;
+    private final String question;
+    private final boolean isClosed;
+    private final int[] choiceIds;
+    private final String[] choiceTexts;
+    private final long[] counts;
+
+    /**
+     * @param poll   The poll the counts belong to.
+     * @param counts The count of every choice, aligned with the poll's choices; owned by this object from now on.
+     */
+    public PollResults(Poll poll, long[] counts) {
+        if (counts.length != poll.choiceIds().length) {
+            throw new IllegalArgumentException("Expected " + poll.choiceIds().length + " counts, got " + counts.length);
+        }
+        this.pollId = poll.getId();
+        this.question = poll.getQuestion();
+        this.isClosed = poll.isClosed();
+        this.choiceIds = poll.choiceIds();
+        this.choiceTexts = poll.choiceTexts();
+        this.counts = counts;
+    }
+
+    public int getPollId() {
+        return pollId;
+    }
+
+    public String getQuestion() {
+        return question;
+    }
+
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    public int size() {
+        return counts.length;
+    }
+
+    public int getChoiceId(int index) {
+        return choiceIds[index];
+    }
+
+    public String getChoiceText(int index) {
+        return choiceTexts[index];
+    }
+
+    public long getCount(int index) {
+        return counts[index];
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Returns a read-only view of the results as one PollSummary per choice, created on access.
+     */
+    public List<PollSummary> asSummaries() {
+        return new AbstractList<PollSummary>() {
+            @Override
+            public PollSummary get(int index) {
+                return new PollSummary(question, choiceTexts[index], (int) counts[index]);
+            }
+
+            @Override
+            public int size() {
+                return counts.length;
+            }
+        };
+    }
+}
@@ -1,9 +1,9 @@
 package com.crio.xpoll.model;
 
-public class PollSummary {
-    private String question;
-    private String choiceText;
-    private int responseCount;
+public final class PollSummary {
+    private final String question;
+    private final String choiceText;
+    private final int responseCount;
 
     public PollSummary(String question, String choiceText, int responseCount) {
         this.question = question;
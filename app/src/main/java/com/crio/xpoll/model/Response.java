@@ -1,9 +1,9 @@
 package com.crio.xpoll.model;
 
-public class Response {
-    private int pollId;
-    private int choiceId;
-    private int userId;
+public final class Response {
+    private final int pollId;
+    private final int choiceId;
+    private final int userId;
 
     public Response(int pollId, int choiceId, int userId) {
         this.pollId = pollId;
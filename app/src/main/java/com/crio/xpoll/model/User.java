@@ -1,9 +1,9 @@
 package com.crio.xpoll.model;
 
-public class User {
-    private int userId;
-    private String username;
-    private String password;
+public final class User {
+    private final int userId;
+    private final String username;
+    private final String password;
 
     public User(int userId, String username, String password) {
         this.userId = userId;
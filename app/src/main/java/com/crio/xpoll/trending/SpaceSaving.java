@@ -0,0 +1,157 @@
+package com.crio.xpoll.trending;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The Space-Saving heavy-hitters sketch over int keys: at most {@code capacity} counters, kept in a
+ * binary min-heap so the smallest one can be replaced in O(log capacity). Once full, a new key takes
+ * over the smallest counter and inherits its count as the key's possible overcount, so a counted key's
+ * true count lies in {@code [count - error, count]} and any key with a true count above
+ * {@link #minCount()} is counted. Not thread-safe.
+ */
+final class SpaceSaving {
+
+    private final int capacity;
+    private final int[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    private final Map<Integer, Integer> positions;
+    private int size;
+
+    SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.keys = new int[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.positions = new HashMap<>(capacity * 2);
+    }
+
+    /**
+     * Adds {@code weight} occurrences of the key.
+     */
+    void offer(int key, long weight) {
+        Integer position = positions.get(key);
+        if (position != null) {
+            counts[position] += weight;
+            siftDown(position);
+        } else if (size < capacity) {
+            keys[size] = key;
+            counts[size] = weight;
+            errors[size] = 0;
+            positions.put(key, size);
+            siftUp(size++);
+        } else {
+            // Replace the smallest counter; its count is now the key's possible overcount
+            positions.remove(keys[0]);
+            keys[0] = key;
+            errors[0] = counts[0];
+            counts[0] += weight;
+            positions.put(key, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * Returns the upper bound on the count of any key that is not counted: the smallest counter once
+     * the sketch is full, otherwise 0.
+     */
+    long minCount() {
+        return size < capacity ? 0 : counts[0];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int keyAt(int index) {
+        return keys[index];
+    }
+
+    long countAt(int index) {
+        return counts[index];
+    }
+
+    long errorAt(int index) {
+        return errors[index];
+    }
+
+    void clear() {
+        positions.clear();
+        size = 0;
+    }
+
+    /**
+     * Copies the counters, so they can be read while the sketch keeps counting.
+     */
+    Snapshot snapshot() {
+        return new Snapshot(Arrays.copyOf(keys, size), Arrays.copyOf(counts, size), Arrays.copyOf(errors, size), minCount());
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (counts[parent] <= counts[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    /**
+     * An immutable copy of a sketch's counters.
+     */
+    static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(new int[0], new long[0], new long[0], 0);
+
+        final int[] keys;
+        final long[] counts;
+        final long[] errors;
+        final long minCount;
+
+        private Snapshot(int[] keys, long[] counts, long[] errors, long minCount) {
+            this.keys = keys;
+            this.counts = counts;
+            this.errors = errors;
+            this.minCount = minCount;
+        }
+    }
+
+    private void swap(int a, int b) {
+        int key = keys[a];
+        long count = counts[a];
+        long error = errors[a];
+        keys[a] = keys[b];
+        counts[a] = counts[b];
+        errors[a] = errors[b];
+        keys[b] = key;
+        counts[b] = count;
+        errors[b] = error;
+        positions.put(keys[a], a);
+        positions.put(keys[b], b);
+    }
+}
@@ -0,0 +1,35 @@
+package com.crio.xpoll.trending;
+
+/**
+ * A poll's estimated number of votes within a {@link TrendingService.Window}.
+ * The estimate never undercounts; the true count lies in {@code [votes - maxError, votes]}.
+ */
+public final class TrendingPoll {
+
+    private final int pollId;
+    private final long votes;
+    private final long maxError;
+
+    TrendingPoll(int pollId, long votes, long maxError) {
+        this.pollId = pollId;
+        this.votes = votes;
+        this.maxError = maxError;
+    }
+
+    public int getPollId() {
+        return pollId;
+    }
+
+    public long getVotes() {
+        return votes;
+    }
+
+    public long getMaxError() {
+        return maxError;
+    }
+
+    @Override
+    public String toString() {
+        return "poll " + pollId + ": " + votes + (maxError > 0 ? " (-" + maxError + ")" : "") + " votes";
+    }
+}
@@ -0,0 +1,256 @@
+package com.crio.xpoll.trending;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import com.crio.xpoll.dao.ResponseListener;
+import com.crio.xpoll.model.Response;
+
+/**
+ * The most-voted polls of the last minute, hour and day, kept in memory from committed votes instead
+ * of grouping {@code responses} by poll.
+ * Registered as a {@link ResponseListener}, it counts votes into one {@link SpaceSaving} sketch per time
+ * bucket of each window, so memory is bounded by the sketch capacity however many polls receive votes.
+ * Once per refresh interval each window's buckets are merged into its top polls, which
+ * {@link #getTopPolls} then returns without further work. The merge works on copies of the buckets
+ * taken under the lock, and only buckets that changed since the last refresh are copied again,
+ * so votes being counted wait for little more than one bucket's copy.
+ *
+ * <p>A window slides by whole buckets: it covers the current, partly filled bucket and the ones before it,
+ * e.g. between 59 and 60 seconds for the last minute. Only votes written through this node are counted,
+ * and the counts start empty on every start.
+ */
+public class TrendingService implements ResponseListener, AutoCloseable {
+
+    public static final int DEFAULT_CAPACITY = 1_000;
+    public static final int DEFAULT_TOP_K = 100;
+    public static final long DEFAULT_REFRESH_MILLIS = 1_000;
+
+    /**
+     * The sliding windows, each split into buckets of equal length.
+     */
+    public enum Window {
+        LAST_MINUTE(1_000, 60), LAST_HOUR(60_000, 60), LAST_DAY(3_600_000, 24);
+
+        private final long bucketMillis;
+        private final int buckets;
+
+        Window(long bucketMillis, int buckets) {
+            this.bucketMillis = bucketMillis;
+            this.buckets = buckets;
+        }
+    }
+
+    private static final Comparator<TrendingPoll> BY_VOTES = Comparator.comparingLong(TrendingPoll::getVotes)
+            .thenComparing(Comparator.comparingInt(TrendingPoll::getPollId).reversed());
+
+    private final int topK;
+    private final LongSupplier clock;
+    private final WindowCounts[] windows;
+    private final ScheduledExecutorService refresher;
+
+    /**
+     * Constructs a TrendingService that refreshes its top polls in the background.
+     *
+     * @param capacity       The number of polls counted per bucket; polls beyond it share the smallest counter.
+     * @param topK           The largest number of polls {@link #getTopPolls} returns.
+     * @param refreshMillis  How often the top polls are recomputed.
+     */
+    public TrendingService(int capacity, int topK, long refreshMillis) {
+        this(capacity, topK, refreshMillis, System::currentTimeMillis);
+    }
+
+    TrendingService(int capacity, int topK, long refreshMillis, LongSupplier clock) {
+        if (topK < 1 || topK > capacity) {
+            throw new IllegalArgumentException("topK must be between 1 and the capacity");
+        }
+        this.topK = topK;
+        this.clock = clock;
+        this.windows = new WindowCounts[Window.values().length];
+        for (Window window : Window.values()) {
+            windows[window.ordinal()] = new WindowCounts(window, capacity);
+        }
+        if (refreshMillis > 0) {
+            this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "xpoll-trending");
+                t.setDaemon(true);
+                return t;
+            });
+            refresher.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.refresher = null;
+        }
+    }
+
+    /**
+     * Creates a TrendingService from the {@code trending.*} entries, falling back to the defaults for missing keys.
+     */
+    public static TrendingService fromProperties(Properties properties) {
+        return new TrendingService(
+                Integer.parseInt(properties.getProperty("trending.capacity", String.valueOf(DEFAULT_CAPACITY))),
+                Integer.parseInt(properties.getProperty("trending.topK", String.valueOf(DEFAULT_TOP_K))),
+                Long.parseLong(properties.getProperty("trending.refreshMillis", String.valueOf(DEFAULT_REFRESH_MILLIS))));
+    }
+
+    /**
+     * Returns the most-voted polls of a window as of the last refresh, most votes first.
+     *
+     * @param window The window to rank.
+     * @param k      The number of polls wanted; at most the configured top K are returned.
+     * @return Up to {@code k} polls; the list must not be modified.
+     */
+    public List<TrendingPoll> getTopPolls(Window window, int k) {
+        List<TrendingPoll> top = windows[window.ordinal()].top;
+        return k >= top.size() ? top : top.subList(0, Math.max(k, 0));
+    }
+
+    @Override
+    public void onResponsesCommitted(List<Response> responses) {
+        long now = clock.getAsLong();
+        synchronized (this) {
+            for (WindowCounts window : windows) {
+                SpaceSaving bucket = window.current(now);
+                window.touch();
+                // A batch is often many votes on one poll, so runs are counted in one step
+                int i = 0;
+                while (i < responses.size()) {
+                    int pollId = responses.get(i).getPollId();
+                    int run = 1;
+                    while (i + run < responses.size() && responses.get(i + run).getPollId() == pollId) {
+                        run++;
+                    }
+                    bucket.offer(pollId, run);
+                    i += run;
+                }
+            }
+        }
+    }
+
+    /**
+     * Recomputes the top polls of every window from its buckets.
+     */
+    void refresh() {
+        long now = clock.getAsLong();
+        for (WindowCounts window : windows) {
+            SpaceSaving.Snapshot[] snapshots;
+            synchronized (this) {
+                window.current(now);
+                snapshots = window.snapshots();
+            }
+            window.top = merge(snapshots, topK);
+        }
+    }
+
+    /**
+     * Sums the bucket copies and keeps the {@code k} polls with the most votes. A poll missing from a full
+     * bucket may still have had up to that bucket's smallest count there, which is added to its
+     * votes and to its error so that the estimate stays an upper bound.
+     */
+    private static List<TrendingPoll> merge(SpaceSaving.Snapshot[] buckets, int k) {
+        // Per poll: summed count, summed error, summed smallest count of the buckets it was found in
+        Map<Integer, long[]> totals = new HashMap<>();
+        long allMins = 0;
+        for (SpaceSaving.Snapshot bucket : buckets) {
+            long min = bucket.minCount;
+            allMins += min;
+            for (int i = 0; i < bucket.keys.length; i++) {
+                long[] total = totals.computeIfAbsent(bucket.keys[i], key -> new long[3]);
+                total[0] += bucket.counts[i];
+                total[1] += bucket.errors[i];
+                total[2] += min;
+            }
+        }
+
+        PriorityQueue<TrendingPoll> best = new PriorityQueue<>(k + 1, BY_VOTES);
+        for (Map.Entry<Integer, long[]> entry : totals.entrySet()) {
+            long[] total = entry.getValue();
+            long missing = allMins - total[2];
+            best.add(new TrendingPoll(entry.getKey(), total[0] + missing, total[1] + missing));
+            if (best.size() > k) {
+                best.poll();
+            }
+        }
+        List<TrendingPoll> result = new ArrayList<>(best);
+        result.sort(BY_VOTES.reversed());
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * The ring of bucket sketches of one window and its last computed top polls.
+     */
+    private static final class WindowCounts {
+        private final Window window;
+        private final SpaceSaving[] buckets;
+        // The last copy of each bucket, and whether the bucket changed since; guarded like the buckets
+        private final SpaceSaving.Snapshot[] snapshots;
+        private final boolean[] changed;
+        private long currentBucket;
+        private volatile List<TrendingPoll> top = Collections.emptyList();
+
+        private WindowCounts(Window window, int capacity) {
+            this.window = window;
+            this.buckets = new SpaceSaving[window.buckets];
+            this.snapshots = new SpaceSaving.Snapshot[window.buckets];
+            this.changed = new boolean[window.buckets];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new SpaceSaving(capacity);
+                snapshots[i] = SpaceSaving.Snapshot.EMPTY;
+            }
+        }
+
+        /**
+         * Returns the sketch of the bucket holding {@code now}, first clearing the buckets that have
+         * fallen out of the window since the last call.
+         */
+        private SpaceSaving current(long now) {
+            long bucket = now / window.bucketMillis;
+            if (bucket > currentBucket) {
+                long expired = Math.min(bucket - currentBucket, buckets.length);
+                for (long b = bucket - expired + 1; b <= bucket; b++) {
+                    int index = (int) (b % buckets.length);
+                    buckets[index].clear();
+                    changed[index] = true;
+                }
+                currentBucket = bucket;
+            }
+            return buckets[(int) (currentBucket % buckets.length)];
+        }
+
+        /**
+         * Marks the current bucket as changed after votes were counted into it.
+         */
+        private void touch() {
+            changed[(int) (currentBucket % buckets.length)] = true;
+        }
+
+        /**
+         * Returns a copy of every bucket, copying again only the buckets that changed.
+         */
+        private SpaceSaving.Snapshot[] snapshots() {
+            for (int i = 0; i < buckets.length; i++) {
+                if (changed[i]) {
+                    snapshots[i] = buckets[i].snapshot();
+                    changed[i] = false;
+                }
+            }
+            return snapshots.clone();
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package com.crio.xpoll.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MethodMetrics;
+
+/**
+ * A bounded pool of physical JDBC connections.
+ * Connections handed out by {@link #getConnection()} return to the pool when closed,
+ * so DAOs can keep using try-with-resources without paying for a new handshake per query.
+ *
+ * <p>Each pooled connection also keeps an LRU cache of the statements prepared through
+ * {@code prepareStatement(sql)} and {@code prepareStatement(sql, autoGeneratedKeys)}, keyed by SQL text.
+ * Closing a cached statement clears its parameters and keeps it for the next borrower instead of
+ * closing it, so the constant SQL of the DAOs is parsed once per physical connection.
+ */
+public class ConnectionPool implements AutoCloseable {
+
+    public static final int DEFAULT_MIN_SIZE = 2;
+    public static final int DEFAULT_MAX_SIZE = 10;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 5_000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 600_000;
+    public static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 2;
+    public static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+
+    // Keys under this prefix are passed to the JDBC driver with the prefix stripped
+    private static final String DRIVER_PROPERTY_PREFIX = "db.driver.";
+
+    // Connections returned within this window are handed out again without a validation ping.
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+    private static final long MAINTENANCE_INTERVAL_MILLIS = 30_000;
+
+    // Time callers spend waiting for a free permit, i.e. pool saturation
+    private static final MethodMetrics ACQUIRE_METRICS = DaoMetrics.getInstance().method("ConnectionPool.acquire");
+
+    private final String url;
+    private final Properties connectionProperties;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final int validationTimeoutSeconds;
+    private final int statementCacheSize;
+
+    private final LongAdder statementCacheHits = new LongAdder();
+    private final LongAdder statementCacheMisses = new LongAdder();
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final ScheduledExecutorService maintenance;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a ConnectionPool with explicit sizing.
+     *
+     * @param url                      The JDBC URL of the database.
+     * @param username                 The database user.
+     * @param password                 The database password.
+     * @param minSize                  The number of connections kept open while idle.
+     * @param maxSize                  The maximum number of connections open at once.
+     * @param acquireTimeoutMillis     How long a caller waits for a free connection.
+     * @param idleTimeoutMillis        How long a connection above {@code minSize} may sit idle before it is closed.
+     * @param validationTimeoutSeconds The timeout passed to {@link Connection#isValid(int)} on borrow.
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+            long acquireTimeoutMillis, long idleTimeoutMillis, int validationTimeoutSeconds) {
+        this(url, username, password, minSize, maxSize, acquireTimeoutMillis, idleTimeoutMillis,
+                validationTimeoutSeconds, DEFAULT_STATEMENT_CACHE_SIZE, new Properties());
+    }
+
+    /**
+     * Constructs a ConnectionPool with explicit sizing, statement caching and driver settings.
+     *
+     * @param statementCacheSize The number of prepared statements cached per connection; 0 disables the cache.
+     * @param driverProperties   Extra properties for the JDBC driver, e.g. {@code rewriteBatchedStatements}.
+     * @see #ConnectionPool(String, String, String, int, int, long, long, int)
+     */
+    public ConnectionPool(String url, String username, String password, int minSize, int maxSize,
+            long acquireTimeoutMillis, long idleTimeoutMillis, int validationTimeoutSeconds,
+            int statementCacheSize, Properties driverProperties) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+        this.url = url;
+        this.connectionProperties = new Properties();
+        connectionProperties.putAll(driverProperties);
+        if (username != null) {
+            connectionProperties.setProperty("user", username);
+        }
+        if (password != null) {
+            connectionProperties.setProperty("password", password);
+        }
+        this.statementCacheSize = statementCacheSize;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.permits = new Semaphore(maxSize, true);
+
+        this.maintenance = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "xpoll-pool-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, 0, MAINTENANCE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Creates a pool sized from {@code db.pool.*} entries, falling back to the defaults for missing keys.
+     * Entries under {@code db.driver.*} are handed to the JDBC driver, e.g.
+     * {@code db.driver.rewriteBatchedStatements=true}.
+     */
+    public static ConnectionPool fromProperties(String url, String username, String password, Properties properties) {
+        Properties driverProperties = new Properties();
+        for (String key : properties.stringPropertyNames()) {
+            if (key.startsWith(DRIVER_PROPERTY_PREFIX)) {
+                driverProperties.setProperty(key.substring(DRIVER_PROPERTY_PREFIX.length()), properties.getProperty(key));
+            }
+        }
+        return new ConnectionPool(url, username, password,
+                Integer.parseInt(properties.getProperty("db.pool.minSize", String.valueOf(DEFAULT_MIN_SIZE))),
+                Integer.parseInt(properties.getProperty("db.pool.maxSize", String.valueOf(DEFAULT_MAX_SIZE))),
+                Long.parseLong(properties.getProperty("db.pool.acquireTimeoutMillis", String.valueOf(DEFAULT_ACQUIRE_TIMEOUT_MILLIS))),
+                Long.parseLong(properties.getProperty("db.pool.idleTimeoutMillis", String.valueOf(DEFAULT_IDLE_TIMEOUT_MILLIS))),
+                Integer.parseInt(properties.getProperty("db.pool.validationTimeoutSeconds", String.valueOf(DEFAULT_VALIDATION_TIMEOUT_SECONDS))),
+                Integer.parseInt(properties.getProperty("db.pool.statementCacheSize", String.valueOf(DEFAULT_STATEMENT_CACHE_SIZE))),
+                driverProperties);
+    }
+
+    /**
+     * Borrows a connection, waiting up to the acquire timeout for one to become free.
+     * Closing the returned connection hands it back to the pool.
+     *
+     * @return A validated connection.
+     * @throws SQLException If the pool is exhausted for longer than the acquire timeout or no connection can be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        long waitStart = System.nanoTime();
+        try {
+            boolean acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+            ACQUIRE_METRICS.recordNanos(System.nanoTime() - waitStart);
+            if (!acquired) {
+                throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis
+                        + " ms waiting for a connection (maxSize=" + maxSize + ").");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.", e);
+        }
+        return checkout();
+    }
+
+    /**
+     * Borrows a connection only if one is free right away, without waiting.
+     *
+     * @return A validated connection, or null if every connection is in use.
+     * @throws SQLException If the pool is closed or no connection can be opened.
+     */
+    public Connection tryGetConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        return checkout();
+    }
+
+    /**
+     * Hands out an idle connection or opens a new one, for a caller that holds a permit.
+     */
+    private Connection checkout() throws SQLException {
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (isUsable(pooled)) {
+                    return pooled.checkout();
+                }
+                discard(pooled);
+            }
+            pooled = openConnection();
+            return pooled.checkout();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes every idle connection. Used after the schema is recreated so that no
+     * pooled session keeps pointing at a dropped database.
+     */
+    public void evictIdleConnections() {
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getIdleConnections() {
+        return idle.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits.sum();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses.sum();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        maintenance.shutdownNow();
+        evictIdleConnections();
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastReturnedAt < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private PooledConnection openConnection() throws SQLException {
+        Connection physical = DriverManager.getConnection(url, connectionProperties);
+        totalConnections.incrementAndGet();
+        return new PooledConnection(physical);
+    }
+
+    private void discard(PooledConnection pooled) {
+        totalConnections.decrementAndGet();
+        try {
+            pooled.physical.close();
+        } catch (SQLException e) {
+            // The connection is being thrown away anyway.
+        }
+    }
+
+    private void release(PooledConnection pooled, boolean broken) {
+        try {
+            if (closed || broken || pooled.physical.isClosed()) {
+                discard(pooled);
+                return;
+            }
+            pooled.releaseStatements();
+            if (!pooled.physical.getAutoCommit()) {
+                pooled.physical.rollback();
+                pooled.physical.setAutoCommit(true);
+            }
+            pooled.lastReturnedAt = System.currentTimeMillis();
+            idle.offerFirst(pooled);
+        } catch (SQLException e) {
+            discard(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void maintain() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && totalConnections.get() > minSize) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastReturnedAt > idleTimeoutMillis && idle.remove(pooled)) {
+                discard(pooled);
+            }
+        }
+        try {
+            while (!closed && totalConnections.get() < minSize) {
+                idle.offerLast(openConnection());
+            }
+        } catch (SQLException e) {
+            // The database may not be up yet; borrowers will retry and surface the error.
+        }
+    }
+
+    private final class PooledConnection {
+        private final Connection physical;
+        private volatile long lastReturnedAt = System.currentTimeMillis();
+
+        // Only touched by the borrower holding the connection, so it needs no locking
+        private final Map<String, CachedStatement> statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                if (size() <= statementCacheSize) {
+                    return false;
+                }
+                // A statement still open in the caller's hands is closed when the caller closes it
+                if (eldest.getValue().inUse) {
+                    eldest.getValue().evicted = true;
+                } else {
+                    closeQuietly(eldest.getValue().physical);
+                }
+                return true;
+            }
+        };
+
+        private PooledConnection(Connection physical) {
+            this.physical = physical;
+        }
+
+        private Connection checkout() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, new Handle(this));
+        }
+
+        /**
+         * Returns a cached statement for the SQL, or null if it must be prepared uncached
+         * because the cache is disabled or the cached statement is already open.
+         */
+        private PreparedStatement prepareCached(Handle handle, Connection proxy, String sql, Integer autoGeneratedKeys)
+                throws SQLException {
+            String key = autoGeneratedKeys == null ? sql : autoGeneratedKeys + ":" + sql;
+            CachedStatement cached = statements.get(key);
+            if (cached == null) {
+                statementCacheMisses.increment();
+                PreparedStatement prepared = autoGeneratedKeys == null
+                        ? physical.prepareStatement(sql)
+                        : physical.prepareStatement(sql, autoGeneratedKeys);
+                cached = new CachedStatement(prepared);
+                statements.put(key, cached);
+            } else if (cached.inUse) {
+                return null;
+            } else {
+                statementCacheHits.increment();
+            }
+            cached.inUse = true;
+            return (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] { PreparedStatement.class }, new StatementHandle(handle, proxy, cached));
+        }
+
+        /**
+         * Makes statements the last borrower left open available again.
+         */
+        private void releaseStatements() throws SQLException {
+            for (CachedStatement cached : statements.values()) {
+                if (cached.inUse) {
+                    cached.reset();
+                }
+            }
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // The statement is being thrown away anyway.
+        }
+    }
+
+    private static final class CachedStatement {
+        private final PreparedStatement physical;
+        private boolean inUse;
+        private boolean evicted;
+
+        private CachedStatement(PreparedStatement physical) {
+            this.physical = physical;
+        }
+
+        private void reset() throws SQLException {
+            inUse = false;
+            if (evicted) {
+                physical.close();
+                return;
+            }
+            physical.clearParameters();
+            physical.clearBatch();
+            physical.clearWarnings();
+        }
+    }
+
+    /**
+     * The per-borrow view of a pooled connection. Once closed it rejects further use,
+     * so a caller holding a stale reference cannot touch a connection lent to someone else.
+     */
+    private final class Handle implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+        private boolean broken;
+
+        private Handle(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!released) {
+                        released = true;
+                        release(pooled, broken);
+                    }
+                    return null;
+                case "isClosed":
+                    return released || pooled.physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + pooled.physical + "]";
+                case "prepareStatement":
+                    if (!released && statementCacheSize > 0 && isCacheable(method)) {
+                        try {
+                            PreparedStatement cached = pooled.prepareCached(this, (Connection) proxy, (String) args[0],
+                                    args.length == 2 ? (Integer) args[1] : null);
+                            if (cached != null) {
+                                return cached;
+                            }
+                        } catch (SQLException e) {
+                            throw failed(e);
+                        }
+                    }
+                    return invokePhysical(method, args);
+                default:
+                    return invokePhysical(method, args);
+            }
+        }
+
+        private Object invokePhysical(Method method, Object[] args) throws Throwable {
+            if (released) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            try {
+                return method.invoke(pooled.physical, args);
+            } catch (InvocationTargetException e) {
+                throw failed(e.getCause());
+            }
+        }
+
+        // Statements prepared with cursor or holdability settings stay uncached
+        private boolean isCacheable(Method method) {
+            Class<?>[] types = method.getParameterTypes();
+            return types.length == 1 || (types.length == 2 && types[1] == int.class);
+        }
+
+        private Throwable failed(Throwable cause) {
+            if (cause instanceof SQLException && isConnectionError((SQLException) cause)) {
+                broken = true;
+            }
+            return cause;
+        }
+
+        private boolean isConnectionError(SQLException e) {
+            String state = e.getSQLState();
+            return state != null && state.startsWith("08");
+        }
+    }
+
+    /**
+     * The caller's view of a cached statement. Closing it hands the statement back to the cache.
+     */
+    private static final class StatementHandle implements InvocationHandler {
+        private final Handle connection;
+        private final Connection connectionProxy;
+        private final CachedStatement cached;
+        private boolean closed;
+
+        private StatementHandle(Handle connection, Connection connectionProxy, CachedStatement cached) {
+            this.connection = connection;
+            this.connectionProxy = connectionProxy;
+            this.cached = cached;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        // Skip the reset if the connection's release already did it
+                        if (cached.inUse && !connection.released) {
+                            cached.reset();
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || cached.physical.isClosed();
+                case "getConnection":
+                    return connectionProxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached[" + cached.physical + "]";
+                default:
+                    if (closed || connection.released) {
+                        throw new SQLException("Statement has already been closed.");
+                    }
+                    try {
+                        return method.invoke(cached.physical, args);
+                    } catch (InvocationTargetException e) {
+                        throw connection.failed(e.getCause());
+                    }
+            }
+        }
+    }
+}
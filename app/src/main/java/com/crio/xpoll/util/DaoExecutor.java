@@ -0,0 +1,129 @@
+package com.crio.xpoll.util;
+
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs blocking DAO calls off the caller's thread and hands back CompletableFutures.
+ * On runtimes with virtual threads every call gets its own virtual thread and a semaphore
+ * caps how many touch JDBC at once; otherwise a fixed pool of that many platform threads is used.
+ * Either way no more calls run concurrently than the connection pool can serve.
+ */
+public class DaoExecutor implements AutoCloseable {
+
+    /**
+     * A DAO call that may fail with an SQLException.
+     */
+    @FunctionalInterface
+    public interface SqlCallable<T> {
+        T call() throws SQLException;
+    }
+
+    private final ExecutorService executor;
+    private final Semaphore limiter;
+    private final boolean virtualThreads;
+
+    /**
+     * Constructs a DaoExecutor.
+     *
+     * @param maxConcurrency The largest number of DAO calls allowed to run at once.
+     */
+    public DaoExecutor(int maxConcurrency) {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            this.executor = virtual;
+            this.limiter = new Semaphore(maxConcurrency);
+            this.virtualThreads = true;
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(maxConcurrency, r -> {
+                Thread t = new Thread(r, "xpoll-dao-" + counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.limiter = null;
+            this.virtualThreads = false;
+        }
+    }
+
+    /**
+     * Creates an executor whose concurrency matches the maximum size of the connection pool.
+     */
+    public static DaoExecutor forConnection(DatabaseConnection databaseConnection) {
+        return new DaoExecutor(databaseConnection.getPool().getMaxSize());
+    }
+
+    /**
+     * Runs the call asynchronously.
+     *
+     * @return A future completed with the call's result, or exceptionally with the SQLException it threw.
+     */
+    public <T> CompletableFuture<T> submit(SqlCallable<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                if (limiter != null) {
+                    limiter.acquire();
+                }
+                try {
+                    future.complete(call.call());
+                } finally {
+                    if (limiter != null) {
+                        limiter.release();
+                    }
+                }
+            } catch (Throwable t) {
+                if (t instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+                future.completeExceptionally(t);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Returns an executor that runs every task on a new virtual thread, or on a cached pool of daemon
+     * platform threads on runtimes without them. Meant for tasks that block, such as HTTP handlers.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String threadName) {
+        ExecutorService virtual = newVirtualThreadExecutor();
+        if (virtual != null) {
+            return virtual;
+        }
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, threadName + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Looked up reflectively so the code still builds and runs on Java 17
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -3,19 +3,28 @@ package com.crio.xpoll.util;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
 
 @Component
 public class DatabaseConnection {
+    public static final long DEFAULT_READ_YOUR_WRITES_MILLIS = 10_000;
+
     private String url;
     private String username;
     private String password;
     private String driverClassName;
-    private Connection connection;
+    private final ConnectionPool pool;
+    private final ReplicaSet replicas;
+    private final LruCache<Object, Boolean> recentWriters;
     private static DatabaseConnection instance;
 
-    private DatabaseConnection(String url, String username, String password, String driverClassName) {
+    private DatabaseConnection(String url, String username, String password, String driverClassName,
+            Properties poolProperties, List<String> replicaUrls) {
         this.url = url;
         this.username = username;
         this.password = password;
@@ -28,34 +37,138 @@ public class DatabaseConnection {
             e.printStackTrace();
         }
 
-        // Register shutdown hook to close the connection
+        this.pool = ConnectionPool.fromProperties(url, username, password, poolProperties);
+        this.replicas = replicaUrls.isEmpty() ? null : new ReplicaSet(replicaUrls,
+                poolProperties.getProperty("db.replica.username", username),
+                poolProperties.getProperty("db.replica.password", password), poolProperties);
+        // Sessions that wrote recently read from the primary until their entry expires
+        this.recentWriters = replicas == null ? null : new LruCache<>(100_000,
+                Long.parseLong(poolProperties.getProperty("db.replica.readYourWritesMillis", String.valueOf(DEFAULT_READ_YOUR_WRITES_MILLIS))));
+
+        // Register shutdown hook to close the pooled connections
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            if (connection != null) {
-                try {
-                    connection.close();
-                    System.out.println("Database connection closed.");
-                } catch (SQLException e) {
-                    e.printStackTrace();
-                }
+            pool.close();
+            if (replicas != null) {
+                replicas.close();
             }
+            System.out.println("Database connection closed.");
         }));
     }
 
     public static DatabaseConnection getInstance(String url, String username, String password, String driverClassName) {
+        return getInstance(url, username, password, driverClassName, new Properties(), Collections.emptyList());
+    }
+
+    /**
+     * Returns the primary DatabaseConnection configured by the {@code db.*} properties,
+     * including the read replicas listed in {@code db.replica.urls}.
+     */
+    public static DatabaseConnection getInstance(Properties properties) {
+        return getInstance(properties.getProperty("db.url"), properties.getProperty("db.username"),
+                properties.getProperty("db.password"), properties.getProperty("jdbc.driverClassName"), properties,
+                parseUrls(properties.getProperty("db.replica.urls")));
+    }
+
+    private static DatabaseConnection getInstance(String url, String username, String password, String driverClassName,
+            Properties poolProperties, List<String> replicaUrls) {
         if (instance == null) {
             synchronized (DatabaseConnection.class) {
                 if (instance == null) {
-                    instance = new DatabaseConnection(url, username, password, driverClassName);
+                    instance = new DatabaseConnection(url, username, password, driverClassName, poolProperties, replicaUrls);
                 }
             }
         }
         return instance;
     }
 
+    /**
+     * Creates a standalone DatabaseConnection with its own pool, e.g. for a shard.
+     * Unlike {@link #getInstance(Properties)} every call returns a new instance.
+     *
+     * @param replicaUrls A comma-separated list of read-replica URLs, or null for none.
+     */
+    public static DatabaseConnection create(String url, String username, String password, String driverClassName,
+            Properties poolProperties, String replicaUrls) {
+        return new DatabaseConnection(url, username, password, driverClassName, poolProperties, parseUrls(replicaUrls));
+    }
+
+    /**
+     * Borrows a connection from the pool. Closing it returns it to the pool.
+     */
     public Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            connection = DriverManager.getConnection(url, username, password);
+        return pool.getConnection();
+    }
+
+    /**
+     * Borrows a connection for a read-only query: from a healthy, caught-up replica when one is
+     * configured, otherwise from the primary.
+     */
+    public Connection getReadConnection() throws SQLException {
+        if (replicas != null) {
+            Connection replica = replicas.getConnection();
+            if (replica != null) {
+                return replica;
+            }
+        }
+        return pool.getConnection();
+    }
+
+    /**
+     * Borrows a connection for a read on behalf of a session, e.g. a user. Sessions that wrote
+     * within the read-your-writes window read from the primary so they always see their own writes.
+     *
+     * @param sessionKey The key passed to {@link #markWrite(Object)} when the session wrote.
+     */
+    public Connection getReadConnection(Object sessionKey) throws SQLException {
+        if (replicas != null && recentWriters.get(sessionKey) != null) {
+            return pool.getConnection();
+        }
+        return getReadConnection();
+    }
+
+    /**
+     * Borrows a connection for a read on behalf of several sessions at once, from the primary
+     * if any of them wrote within the read-your-writes window.
+     *
+     * @param sessionKeys The keys passed to {@link #markWrite(Object)} when the sessions wrote.
+     */
+    public Connection getReadConnection(Collection<?> sessionKeys) throws SQLException {
+        if (replicas != null) {
+            for (Object sessionKey : sessionKeys) {
+                if (recentWriters.get(sessionKey) != null) {
+                    return pool.getConnection();
+                }
+            }
+        }
+        return getReadConnection();
+    }
+
+    /**
+     * Records that a session just wrote, so its reads go to the primary for a while.
+     */
+    public void markWrite(Object sessionKey) {
+        if (recentWriters != null) {
+            recentWriters.put(sessionKey, Boolean.TRUE);
+        }
+    }
+
+    public boolean hasReplicas() {
+        return replicas != null;
+    }
+
+    public ConnectionPool getPool() {
+        return pool;
+    }
+
+    private static List<String> parseUrls(String urls) {
+        List<String> result = new ArrayList<>();
+        if (urls != null) {
+            for (String url : urls.split(",")) {
+                if (!url.isBlank()) {
+                    result.add(url.trim());
+                }
+            }
         }
-        return connection;
+        return result;
     }
 }
\ No newline at end of file
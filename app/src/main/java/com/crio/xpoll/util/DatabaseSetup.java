@@ -2,38 +2,309 @@ package com.crio.xpoll.util;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Creates and upgrades the schema with versioned migration scripts.
+ * Each database records the migrations applied to it in a version table, so {@link #migrate}
+ * runs only the pending ones; when the schema is current it costs a single query and no DDL.
+ *
+ * <p>Version 1 is the original schema and every later change is its own migration. Every statement
+ * of a migration is guarded ({@code IF NOT EXISTS}, or a check against {@code information_schema}),
+ * so a database created before the version table existed simply runs them all, keeping what it
+ * already has, and a migration that failed partway can be run again.
+ */
 public class DatabaseSetup {
 
+    private static final List<Migration> PRIMARY_MIGRATIONS = List.of(
+            new Migration(1, "Create schema", "/db/primary/V1__create_schema.sql"),
+            new Migration(2, "Add choice counters", "/db/primary/V2__choice_counts.sql"),
+            new Migration(3, "Add tally checkpoints", "/db/primary/V3__tally_checkpoints.sql"),
+            new Migration(4, "Give responses a surrogate key", "/db/common/responses_surrogate_key.sql"),
+            new Migration(5, "Add the one-vote-per-user key", "/db/common/responses_voter_key.sql"));
+
+    private static final List<Migration> SHARD_MIGRATIONS = List.of(
+            new Migration(1, "Create response tables", "/db/shard/V1__create_schema.sql"),
+            new Migration(2, "Add tally checkpoints", "/db/shard/V2__tally_checkpoints.sql"),
+            new Migration(3, "Give responses a surrogate key", "/db/common/responses_surrogate_key.sql"),
+            new Migration(4, "Add the one-vote-per-user key", "/db/common/responses_voter_key.sql"));
+
+    // Separate tables, so a shard that shares a database with the primary keeps both histories
+    private static final String PRIMARY_VERSION_TABLE = "schema_version";
+    private static final String SHARD_VERSION_TABLE = "shard_schema_version";
+
+    private static final String CREATE_VERSION_TABLE_SQL = "CREATE TABLE IF NOT EXISTS %s ("
+            + "version INT PRIMARY KEY, "
+            + "description VARCHAR(200) NOT NULL, "
+            + "script VARCHAR(200) NOT NULL, "
+            + "installed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP, "
+            + "execution_millis BIGINT NOT NULL)";
+    private static final String CURRENT_VERSION_SQL = "SELECT MAX(version) FROM %s";
+    private static final String RECORD_VERSION_SQL =
+            "INSERT INTO %s (version, description, script, execution_millis) VALUES (?, ?, ?, ?)";
+
+    private static final int MIGRATION_LOCK_TIMEOUT_SECONDS = 60;
+
+    /**
+     * Drops and recreates the primary database, then applies every migration. Wipes all data, so it
+     * is meant for tests and benchmarks; the application itself calls {@link #migrate}.
+     */
     public static void executeSQLScript(DatabaseConnection dbConnection) {
+        try {
+            executeSQLScript(dbConnection, "/db/primary/reset.sql");
+            // Idle pooled sessions still point at the database that was just dropped
+            dbConnection.getPool().evictIdleConnections();
+            migrate(dbConnection, PRIMARY_MIGRATIONS, PRIMARY_VERSION_TABLE);
+            System.out.println("Database setup completed.");
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Drops and recreates the response tables on every shard. Does nothing when the primary is the only shard.
+     */
+    public static void executeShardScripts(ShardRouter shardRouter) {
+        if (shardRouter.hasShardDatabases()) {
+            for (DatabaseConnection shard : shardRouter.all()) {
+                try {
+                    executeSQLScript(shard, "/db/shard/reset.sql");
+                    migrate(shard, SHARD_MIGRATIONS, SHARD_VERSION_TABLE);
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the primary migrations the database does not have yet. Existing data is kept.
+     *
+     * @throws SQLException If the version cannot be read or a migration fails; migrations applied
+     *                      before the failing one stay recorded and the failing one is rerun in full next time.
+     */
+    public static void migrate(DatabaseConnection dbConnection) throws SQLException {
+        migrate(dbConnection, PRIMARY_MIGRATIONS, PRIMARY_VERSION_TABLE);
+    }
+
+    /**
+     * Applies the pending shard migrations on every shard. Does nothing when the primary is the only shard.
+     */
+    public static void migrateShards(ShardRouter shardRouter) throws SQLException {
+        if (shardRouter.hasShardDatabases()) {
+            for (DatabaseConnection shard : shardRouter.all()) {
+                migrate(shard, SHARD_MIGRATIONS, SHARD_VERSION_TABLE);
+            }
+        }
+    }
+
+    private static void migrate(DatabaseConnection dbConnection, List<Migration> migrations, String versionTable)
+            throws SQLException {
+        int latest = migrations.get(migrations.size() - 1).version;
+        try (Connection conn = dbConnection.getConnection()) {
+            // Warm start: one query, no DDL
+            int current = currentVersion(conn, versionTable);
+            if (current >= latest) {
+                return;
+            }
+
+            // Another node starting at the same time waits here and then finds the work done
+            lock(conn, versionTable);
+            try {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute(String.format(CREATE_VERSION_TABLE_SQL, versionTable));
+                }
+                current = currentVersion(conn, versionTable);
+                for (Migration migration : migrations) {
+                    if (migration.version > current) {
+                        apply(conn, migration, versionTable);
+                    }
+                }
+            } finally {
+                unlock(conn, versionTable);
+            }
+        }
+    }
+
+    /**
+     * Returns the highest applied version, or 0 if the database has no version table or no rows in it.
+     */
+    private static int currentVersion(Connection conn, String versionTable) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(String.format(CURRENT_VERSION_SQL, versionTable))) {
+            rs.next();
+            return rs.getInt(1);
+        } catch (SQLException e) {
+            // 42S02: table does not exist
+            if ("42S02".equals(e.getSQLState())) {
+                return 0;
+            }
+            throw e;
+        }
+    }
+
+    private static void apply(Connection conn, Migration migration, String versionTable) throws SQLException {
+        long start = System.currentTimeMillis();
+        try (Statement stmt = conn.createStatement()) {
+            for (String statement : splitStatements(readScript(migration.script))) {
+                try {
+                    stmt.execute(statement);
+                } catch (SQLException e) {
+                    throw new SQLException("Migration " + migration.version + " (" + migration.script + ") failed at: "
+                            + statement.trim(), e.getSQLState(), e.getErrorCode(), e);
+                }
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        // DDL commits implicitly in MySQL, so the version is recorded only once every statement has run;
+        // a failed migration is rerun in full, which its guarded statements allow
+        try (PreparedStatement recordStmt = conn.prepareStatement(String.format(RECORD_VERSION_SQL, versionTable))) {
+            recordStmt.setInt(1, migration.version);
+            recordStmt.setString(2, migration.description);
+            recordStmt.setString(3, migration.script);
+            recordStmt.setLong(4, elapsed);
+            recordStmt.executeUpdate();
+        }
+        System.out.println("Applied migration " + migration.version + " (" + migration.description + ") in "
+                + elapsed + " ms.");
+    }
+
+    private static void lock(Connection conn, String versionTable) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(CONCAT(?, '.', DATABASE()), ?)")) {
+            stmt.setString(1, versionTable);
+            stmt.setInt(2, MIGRATION_LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another node to finish migrating the schema");
+                }
+            }
+        }
+    }
+
+    private static void unlock(Connection conn, String versionTable) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("DO RELEASE_LOCK(CONCAT(?, '.', DATABASE()))")) {
+            stmt.setString(1, versionTable);
+            stmt.execute();
+        }
+    }
+
+    private static void executeSQLScript(DatabaseConnection dbConnection, String script) throws SQLException {
         try (Connection conn = dbConnection.getConnection();
-             Statement stmt = conn.createStatement();
-             BufferedReader reader = new BufferedReader(new InputStreamReader(
-                     DatabaseSetup.class.getResourceAsStream("/init-schema.sql")))) {
+             Statement stmt = conn.createStatement()) {
+            for (String statement : splitStatements(readScript(script))) {
+                stmt.execute(statement);
+            }
+        }
+    }
 
+    private static String readScript(String script) {
+        InputStream input = DatabaseSetup.class.getResourceAsStream(script);
+        if (input == null) {
+            throw new IllegalStateException("SQL script " + script + " not found on the classpath");
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8))) {
             StringBuilder sql = new StringBuilder();
             String line;
-
             while ((line = reader.readLine()) != null) {
                 sql.append(line);
                 sql.append("\n");
             }
+            return sql.toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            String[] statements = sql.toString().split(";");
-            for (String statement : statements) {
-                if (!statement.trim().isEmpty()) {
-                    stmt.execute(statement);
+    /**
+     * Splits a script into statements at the semicolons outside quotes and comments.
+     * Line comments ({@code --} and {@code #}) and plain block comments are removed, while
+     * {@code /*!} and {@code /*+} comments are kept, as MySQL executes them. {@code DELIMITER} is not supported.
+     */
+    static List<String> splitStatements(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int length = script.length();
+        int i = 0;
+        while (i < length) {
+            char c = script.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = endOfQuoted(script, i);
+                current.append(script, i, end);
+                i = end;
+            } else if (c == '#' || (c == '-' && script.startsWith("--", i)
+                    && (i + 2 == length || Character.isWhitespace(script.charAt(i + 2))))) {
+                // MySQL needs whitespace after --, so "1--1" stays an expression
+                int end = script.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == '/' && script.startsWith("/*", i)) {
+                int end = script.indexOf("*/", i + 2);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unterminated comment in SQL script");
                 }
+                end += 2;
+                char kind = i + 2 < length ? script.charAt(i + 2) : ' ';
+                current.append(kind == '!' || kind == '+' ? script.substring(i, end) : " ");
+                i = end;
+            } else if (c == ';') {
+                addStatement(statements, current);
+                i++;
+            } else {
+                current.append(c);
+                i++;
             }
+        }
+        addStatement(statements, current);
+        return statements;
+    }
 
-            System.out.println("Database setup completed.");
+    private static int endOfQuoted(String script, int start) {
+        char quote = script.charAt(start);
+        int i = start + 1;
+        while (i < script.length()) {
+            char c = script.charAt(i);
+            if (c == '\\' && quote != '`') {
+                i += 2;
+            } else if (c == quote) {
+                // A doubled quote is an escaped quote
+                if (i + 1 < script.length() && script.charAt(i + 1) == quote) {
+                    i += 2;
+                } else {
+                    return i + 1;
+                }
+            } else {
+                i++;
+            }
+        }
+        throw new IllegalArgumentException("Unterminated " + quote + " quote in SQL script");
+    }
 
-        } catch (SQLException | IOException e) {
-            e.printStackTrace();
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String statement = current.toString().trim();
+        if (!statement.isEmpty()) {
+            statements.add(statement);
+        }
+        current.setLength(0);
+    }
+
+    private static final class Migration {
+        private final int version;
+        private final String description;
+        private final String script;
+
+        private Migration(int version, String description, String script) {
+            this.version = version;
+            this.description = description;
+            this.script = script;
         }
     }
 }
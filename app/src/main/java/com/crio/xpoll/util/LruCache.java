@@ -0,0 +1,162 @@
+package com.crio.xpoll.util;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded, least-recently-used cache with a time-to-live per entry and hit/miss statistics.
+ * Used by the DAOs to keep hot rows in memory in front of MySQL.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+public class LruCache<K, V> {
+
+    /**
+     * Loads a value on a cache miss.
+     */
+    @FunctionalInterface
+    public interface Loader<K, V> {
+        V load(K key) throws SQLException;
+    }
+
+    private final int maxSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<K, Entry<V>> entries;
+    // Bumped by every invalidation, so a load that overlapped one does not cache a stale value
+    private long invalidations;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs an LruCache.
+     *
+     * @param maxSize   The maximum number of entries kept; the least recently used one is evicted beyond it.
+     * @param ttlMillis How long an entry stays valid after it is written, or 0 for no expiry.
+     */
+    public LruCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for the key, or null if it is absent or expired.
+     */
+    public V get(K key) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            if (entry != null && !entry.isExpired(ttlNanos)) {
+                hits.increment();
+                return entry.value;
+            }
+            if (entry != null) {
+                entries.remove(key);
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Returns the cached value for the key, loading and caching it on a miss.
+     * The loader runs outside the cache lock, so concurrent misses on one key may each load it.
+     * A value is not cached if anything was invalidated while it loaded, as it may predate that change.
+     */
+    public V get(K key, Loader<K, V> loader) throws SQLException {
+        long generation;
+        synchronized (entries) {
+            generation = invalidations;
+        }
+        V value = get(key);
+        if (value == null) {
+            value = loader.load(key);
+            if (value != null) {
+                synchronized (entries) {
+                    if (invalidations == generation) {
+                        entries.put(key, new Entry<>(value));
+                    }
+                }
+            }
+        }
+        return value;
+    }
+
+    public void put(K key, V value) {
+        synchronized (entries) {
+            entries.put(key, new Entry<>(value));
+        }
+    }
+
+    public void invalidate(K key) {
+        synchronized (entries) {
+            invalidations++;
+            entries.remove(key);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            invalidations++;
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d/%d hits=%d misses=%d evictions=%d hitRate=%.3f",
+                size(), maxSize, getHitCount(), getMissCount(), getEvictionCount(), getHitRate());
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long writtenAt;
+
+        private Entry(V value) {
+            this.value = value;
+            this.writtenAt = System.nanoTime();
+        }
+
+        private boolean isExpired(long ttlNanos) {
+            return ttlNanos > 0 && System.nanoTime() - writtenAt > ttlNanos;
+        }
+    }
+}
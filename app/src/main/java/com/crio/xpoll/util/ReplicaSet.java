@@ -0,0 +1,152 @@
+package com.crio.xpoll.util;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The read replicas behind one {@link DatabaseConnection}, each with its own connection pool.
+ * Reads are spread round-robin over the replicas that are reachable and within the allowed
+ * replication lag; a replica that cannot open a connection is skipped for a while before it is retried.
+ * Replica borrows never wait: a replica whose pool is busy is passed over for that read only.
+ */
+class ReplicaSet implements AutoCloseable {
+
+    static final long DEFAULT_MAX_LAG_SECONDS = 5;
+    static final long DEFAULT_LAG_CHECK_MILLIS = 2_000;
+    static final long DEFAULT_RETRY_MILLIS = 5_000;
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final long maxLagSeconds;
+    private final long retryMillis;
+    private final ScheduledExecutorService lagChecker;
+
+    ReplicaSet(List<String> urls, String username, String password, Properties properties) {
+        for (String url : urls) {
+            replicas.add(new Replica(url, ConnectionPool.fromProperties(url, username, password, properties)));
+        }
+        this.maxLagSeconds = Long.parseLong(properties.getProperty("db.replica.maxLagSeconds", String.valueOf(DEFAULT_MAX_LAG_SECONDS)));
+        this.retryMillis = Long.parseLong(properties.getProperty("db.replica.retryMillis", String.valueOf(DEFAULT_RETRY_MILLIS)));
+        long lagCheckMillis = Long.parseLong(properties.getProperty("db.replica.lagCheckMillis", String.valueOf(DEFAULT_LAG_CHECK_MILLIS)));
+
+        this.lagChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "xpoll-replica-lag-check");
+            t.setDaemon(true);
+            return t;
+        });
+        lagChecker.scheduleWithFixedDelay(this::checkLag, 0, lagCheckMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the next usable replica.
+     *
+     * @return A replica connection, or null if no replica is currently usable.
+     */
+    Connection getConnection() {
+        long now = System.currentTimeMillis();
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (replica.lagging || now < replica.unavailableUntil) {
+                continue;
+            }
+            try {
+                // A busy replica is healthy, so it only loses this read to the next one or the primary
+                Connection conn = replica.pool.tryGetConnection();
+                if (conn != null) {
+                    return conn;
+                }
+            } catch (SQLException e) {
+                replica.unavailableUntil = now + retryMillis;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        lagChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            replica.pool.close();
+        }
+    }
+
+    private void checkLag() {
+        for (Replica replica : replicas) {
+            Connection conn;
+            try {
+                conn = replica.pool.tryGetConnection();
+            } catch (SQLException e) {
+                replica.unavailableUntil = System.currentTimeMillis() + retryMillis;
+                continue;
+            }
+            if (conn == null) {
+                // Every connection is serving reads; check again next time
+                continue;
+            }
+            try (Connection checked = conn;
+                 Statement stmt = checked.createStatement()) {
+                Long lag = readLagSeconds(stmt);
+                // A replica whose replication has stopped reports no lag at all
+                replica.lagging = lag == null || lag > maxLagSeconds;
+                replica.unavailableUntil = 0;
+            } catch (SQLException e) {
+                // Without REPLICATION CLIENT the lag is unknown; keep serving reads but watch for borrow failures
+                if (!isAccessDenied(e)) {
+                    replica.unavailableUntil = System.currentTimeMillis() + retryMillis;
+                }
+            }
+        }
+    }
+
+    private static Long readLagSeconds(Statement stmt) throws SQLException {
+        ResultSet rs;
+        String column;
+        try {
+            rs = stmt.executeQuery("SHOW REPLICA STATUS");
+            column = "Seconds_Behind_Source";
+        } catch (SQLException e) {
+            // MySQL before 8.0.22
+            rs = stmt.executeQuery("SHOW SLAVE STATUS");
+            column = "Seconds_Behind_Master";
+        }
+        try (ResultSet status = rs) {
+            if (!status.next()) {
+                return null;
+            }
+            long lag = status.getLong(column);
+            return status.wasNull() ? null : lag;
+        }
+    }
+
+    private static boolean isAccessDenied(SQLException e) {
+        return e.getErrorCode() == 1227 || e.getErrorCode() == 1045;
+    }
+
+    private static final class Replica {
+        private final String url;
+        private final ConnectionPool pool;
+        private volatile boolean lagging;
+        private volatile long unavailableUntil;
+
+        private Replica(String url, ConnectionPool pool) {
+            this.url = url;
+            this.pool = pool;
+        }
+
+        @Override
+        public String toString() {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.crio.xpoll.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Routes poll-scoped data (responses and their counters) to one of N databases by a hash of the poll ID.
+ * Users, polls and choices stay on the primary database; with no shards configured every poll routes
+ * to the primary, so the unsharded layout is just the single-shard case.
+ *
+ * <p>Shards are configured in application.properties:
+ * <pre>
+ * db.shards.count=2
+ * db.shards.0.url=jdbc:mysql://localhost:3307/xpoll
+ * db.shards.1.url=jdbc:mysql://localhost:3308/xpoll
+ * </pre>
+ * {@code db.shards.N.username} and {@code db.shards.N.password} default to the primary's credentials,
+ * {@code db.shards.N.replica.urls} optionally lists the shard's read replicas, and each shard gets
+ * its own connection pool sized from the {@code db.pool.*} settings.
+ */
+public class ShardRouter {
+
+    private final List<DatabaseConnection> shards;
+    // The primary when it also serves as the only shard, otherwise null
+    private final DatabaseConnection primary;
+
+    /**
+     * Constructs a ShardRouter over the given databases, in shard-number order.
+     */
+    public ShardRouter(List<DatabaseConnection> shards) {
+        this(shards, null);
+    }
+
+    private ShardRouter(List<DatabaseConnection> shards, DatabaseConnection primary) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.primary = primary;
+    }
+
+    /**
+     * Creates a router that sends every poll to the one given database, which is the primary.
+     */
+    public static ShardRouter single(DatabaseConnection databaseConnection) {
+        return new ShardRouter(Collections.singletonList(databaseConnection), databaseConnection);
+    }
+
+    /**
+     * Creates a router from the {@code db.shards.*} properties, or a single-shard router over
+     * the primary when {@code db.shards.count} is absent or zero.
+     */
+    public static ShardRouter fromProperties(DatabaseConnection primary, Properties properties) {
+        int count = Integer.parseInt(properties.getProperty("db.shards.count", "0"));
+        if (count == 0) {
+            return single(primary);
+        }
+        List<DatabaseConnection> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String prefix = "db.shards." + i + ".";
+            String url = properties.getProperty(prefix + "url");
+            if (url == null) {
+                throw new IllegalArgumentException("Missing " + prefix + "url");
+            }
+            shards.add(DatabaseConnection.create(url,
+                    properties.getProperty(prefix + "username", properties.getProperty("db.username")),
+                    properties.getProperty(prefix + "password", properties.getProperty("db.password")),
+                    properties.getProperty("jdbc.driverClassName"), properties,
+                    properties.getProperty(prefix + "replica.urls")));
+        }
+        return new ShardRouter(shards);
+    }
+
+    /**
+     * Returns the database holding the responses of the given poll.
+     */
+    public DatabaseConnection forPoll(int pollId) {
+        if (shards.size() == 1) {
+            return shards.get(0);
+        }
+        return shards.get(shardOf(pollId));
+    }
+
+    /**
+     * Returns the shard number of the given poll.
+     */
+    public int shardOf(int pollId) {
+        return Math.floorMod(mix(pollId), shards.size());
+    }
+
+    public List<DatabaseConnection> all() {
+        return shards;
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    /**
+     * Returns whether polls are spread over more than one shard.
+     */
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    /**
+     * Returns whether the shards are configured databases of their own rather than the primary,
+     * which is the case even for a single configured shard. Their schema is managed separately.
+     */
+    public boolean hasShardDatabases() {
+        return primary == null;
+    }
+
+    // Murmur3 finalizer, so sequential poll IDs spread evenly across shards
+    private static int mix(int value) {
+        int h = value;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,27 @@
+-- Moves responses from the composite primary key (poll_id, choice_id, user_id) to an auto-increment
+-- surrogate key with the old key kept unique. The clustered index then stays append-only under high vote rates.
+-- Applied as version 4 on the primary and version 3 on the shards. Each step runs only if it is still
+-- missing, so the migration can be rerun after a partial failure.
+-- Adding the AUTO_INCREMENT column rebuilds the table and blocks writes while it runs, so plan for
+-- roughly the time of a full table copy.
+
+-- Indexes that a table created before they existed may lack, each added only if missing
+SET @add_poll_user = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = 'responses' AND index_name = 'idx_responses_poll_user') = 0, 'ALTER TABLE responses ADD KEY idx_responses_poll_user (poll_id, user_id)', 'DO 0');
+PREPARE add_poll_user FROM @add_poll_user;
+EXECUTE add_poll_user;
+DEALLOCATE PREPARE add_poll_user;
+
+SET @add_created_at = IF((SELECT COUNT(*) FROM information_schema.statistics WHERE table_schema = DATABASE() AND table_name = 'responses' AND index_name = 'idx_responses_created_at') = 0, 'ALTER TABLE responses ADD KEY idx_responses_created_at (created_at)', 'DO 0');
+PREPARE add_created_at FROM @add_created_at;
+EXECUTE add_created_at;
+DEALLOCATE PREPARE add_created_at;
+
+-- Rows written before created_at had a value get the epoch rather than failing the NOT NULL change
+UPDATE responses SET created_at = FROM_UNIXTIME(1) WHERE created_at IS NULL;
+
+-- Swap the clustered key in one rebuild, unless the id column is already there.
+-- idx_responses_poll_user keeps the poll_id foreign key indexed meanwhile
+SET @add_surrogate_key = IF((SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'responses' AND column_name = 'id') = 0, 'ALTER TABLE responses DROP PRIMARY KEY, ADD COLUMN id BIGINT NOT NULL AUTO_INCREMENT FIRST, ADD PRIMARY KEY (id), ADD UNIQUE KEY uk_responses_vote (poll_id, choice_id, user_id), ADD KEY idx_responses_choice (choice_id), MODIFY created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP', 'DO 0');
+PREPARE add_surrogate_key FROM @add_surrogate_key;
+EXECUTE add_surrogate_key;
+DEALLOCATE PREPARE add_surrogate_key;
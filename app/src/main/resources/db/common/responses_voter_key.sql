@@ -0,0 +1,13 @@
+-- Adds voter_id, set to user_id when votes are limited to one per user and NULL otherwise, with a unique
+-- key on (poll_id, voter_id). The database then rejects a user's second vote on a poll whichever node or
+-- importer writes it, while NULLs never collide, so polls that allow one vote per choice are unaffected.
+-- Applied as version 5 on the primary and version 4 on the shards, and only if the column is still missing.
+-- A partitioned table needs created_at in every unique key, so the key then includes it.
+SET @add_voter_key = IF((SELECT COUNT(*) FROM information_schema.columns WHERE table_schema = DATABASE() AND table_name = 'responses' AND column_name = 'voter_id') = 0,
+    IF((SELECT COUNT(*) FROM information_schema.partitions WHERE table_schema = DATABASE() AND table_name = 'responses' AND partition_name IS NOT NULL) = 0,
+        'ALTER TABLE responses ADD COLUMN voter_id INT NULL, ADD UNIQUE KEY uk_responses_voter (poll_id, voter_id)',
+        'ALTER TABLE responses ADD COLUMN voter_id INT NULL, ADD UNIQUE KEY uk_responses_voter (poll_id, voter_id, created_at)'),
+    'DO 0');
+PREPARE add_voter_key FROM @add_voter_key;
+EXECUTE add_voter_key;
+DEALLOCATE PREPARE add_voter_key;
@@ -1,14 +1,9 @@
--- Drop the database if it exists
-DROP DATABASE IF EXISTS xpoll;
-
--- Create the database
-CREATE DATABASE xpoll;
-
--- Use the created database
-USE xpoll;
+-- Version 1 of the primary schema: the original users, polls, choices and responses tables.
+-- Every statement is guarded, so the migration can be rerun after a partial failure and
+-- leaves a database that already has these tables unchanged.
 
 -- Create users table
-CREATE TABLE users (
+CREATE TABLE IF NOT EXISTS users (
     id INT AUTO_INCREMENT PRIMARY KEY,
     username VARCHAR(50) NOT NULL UNIQUE,
     password VARCHAR(100) NOT NULL,
@@ -16,7 +11,7 @@ CREATE TABLE users (
 );
 
 -- Create polls table
-CREATE TABLE polls (
+CREATE TABLE IF NOT EXISTS polls (
     id INT AUTO_INCREMENT PRIMARY KEY,
     user_id INT NOT NULL,
     question VARCHAR(255) NOT NULL,
@@ -26,7 +21,7 @@ CREATE TABLE polls (
 );
 
 -- Create poll choices table
-CREATE TABLE choices (
+CREATE TABLE IF NOT EXISTS choices (
     id INT AUTO_INCREMENT PRIMARY KEY,
     poll_id INT NOT NULL,
     choice_text VARCHAR(255) NOT NULL,
@@ -35,7 +30,7 @@ CREATE TABLE choices (
 );
 
 -- Create responses table
-CREATE TABLE responses (
+CREATE TABLE IF NOT EXISTS responses (
     poll_id INT NOT NULL,
     choice_id INT NOT NULL,
     user_id INT NOT NULL,
@@ -47,9 +42,9 @@ CREATE TABLE responses (
 );
 
 -- Create a view for poll summaries
-CREATE VIEW poll_summaries AS
+CREATE OR REPLACE VIEW poll_summaries AS
 SELECT p.id AS poll_id, p.question, c.choice_text, COUNT(r.poll_id) AS response_count
 FROM polls p
 JOIN choices c ON p.id = c.poll_id
 LEFT JOIN responses r ON c.id = r.choice_id
-GROUP BY p.id, p.question, c.choice_text, c.id;
\ No newline at end of file
+GROUP BY p.id, p.question, c.choice_text, c.id;
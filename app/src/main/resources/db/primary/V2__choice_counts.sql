@@ -0,0 +1,16 @@
+-- Version 2: per-choice vote counters, kept in step with responses by ResponseDAO.
+
+CREATE TABLE IF NOT EXISTS choice_counts (
+    choice_id INT PRIMARY KEY,
+    poll_id INT NOT NULL,
+    response_count BIGINT NOT NULL DEFAULT 0,
+    KEY idx_choice_counts_poll (poll_id),
+    FOREIGN KEY (choice_id) REFERENCES choices(id) ON DELETE CASCADE,
+    FOREIGN KEY (poll_id) REFERENCES polls(id) ON DELETE CASCADE
+);
+
+-- Backfill the polls that have responses but no counters yet; polls already counted are left alone
+INSERT INTO choice_counts (choice_id, poll_id, response_count)
+SELECT r.choice_id, r.poll_id, COUNT(*) FROM responses r
+WHERE NOT EXISTS (SELECT 1 FROM choice_counts cc WHERE cc.poll_id = r.poll_id)
+GROUP BY r.choice_id, r.poll_id;
@@ -0,0 +1,11 @@
+-- Drops and recreates the database, for tests and benchmarks that start from an empty schema.
+-- DatabaseSetup.executeSQLScript runs the migrations right after it.
+
+-- Drop the database if it exists
+DROP DATABASE IF EXISTS xpoll;
+
+-- Create the database
+CREATE DATABASE xpoll;
+
+-- Use the created database
+USE xpoll;
@@ -0,0 +1,20 @@
+-- Version 1 of the response shard schema: responses and their per-choice counters. Users, polls and
+-- choices live on the primary database, so the poll-scoped tables here carry no foreign keys to them.
+-- Every statement is guarded, so the migration can be rerun after a partial failure.
+
+-- Create responses table
+CREATE TABLE IF NOT EXISTS responses (
+    poll_id INT NOT NULL,
+    choice_id INT NOT NULL,
+    user_id INT NOT NULL,
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (poll_id,choice_id,user_id)
+);
+
+-- Create per-choice vote counters, kept in step with responses by ResponseDAO
+CREATE TABLE IF NOT EXISTS choice_counts (
+    choice_id INT PRIMARY KEY,
+    poll_id INT NOT NULL,
+    response_count BIGINT NOT NULL DEFAULT 0,
+    KEY idx_choice_counts_poll (poll_id)
+);
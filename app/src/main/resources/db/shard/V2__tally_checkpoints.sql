@@ -0,0 +1,7 @@
+-- Version 2: the fast-tally checkpoint. choice_counts holds the responses created up to checkpoint_at.
+-- The table starts empty, so the first fast-tally checkpoint rebuilds the counters from responses.
+
+CREATE TABLE IF NOT EXISTS tally_checkpoints (
+    id TINYINT PRIMARY KEY,
+    checkpoint_at TIMESTAMP NOT NULL
+);
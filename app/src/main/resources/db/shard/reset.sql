@@ -0,0 +1,7 @@
+-- Drops the response tables of a shard, matching the reset done on the primary by primary/reset.sql.
+-- DatabaseSetup.executeShardScripts runs the shard migrations right after it.
+DROP TABLE IF EXISTS responses;
+DROP TABLE IF EXISTS choice_counts;
+DROP TABLE IF EXISTS tally_checkpoints;
+DROP TABLE IF EXISTS shard_schema_version;
+DROP TABLE IF EXISTS schema_version;
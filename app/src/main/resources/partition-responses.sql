@@ -0,0 +1,57 @@
+-- Optional: RANGE-partitions responses by month of created_at, so old months can be dropped or
+-- archived as whole partitions and time-range scans (exports, tally checkpoints) prune to the months they touch.
+-- Run it after the schema migrations, against each database holding responses.
+--
+-- MySQL requires every unique key of a partitioned table to contain the partitioning column and does
+-- not allow foreign keys on it. So this script drops the foreign keys of responses and extends the
+-- primary and unique keys with created_at. The same vote, or with vote.onePerUser a second vote by the
+-- same user, at two different times is then no longer rejected by the database; only the vote.onePerUser
+-- pre-check or the application itself then prevents repeated votes.
+-- Add next month's partition ahead of time with:
+--   ALTER TABLE responses REORGANIZE PARTITION p_future INTO (
+--       PARTITION p2027_01 VALUES LESS THAN (UNIX_TIMESTAMP('2027-02-01 00:00:00')),
+--       PARTITION p_future VALUES LESS THAN MAXVALUE)
+
+-- Drop whatever foreign keys the table has, as their generated names differ between databases
+SET @fk_1 = (SELECT IFNULL(MIN(constraint_name), '') FROM information_schema.referential_constraints WHERE constraint_schema = DATABASE() AND table_name = 'responses');
+SET @drop_fk_1 = IF(@fk_1 = '', 'DO 0', CONCAT('ALTER TABLE responses DROP FOREIGN KEY ', @fk_1));
+PREPARE drop_fk_1 FROM @drop_fk_1;
+EXECUTE drop_fk_1;
+DEALLOCATE PREPARE drop_fk_1;
+
+SET @fk_2 = (SELECT IFNULL(MIN(constraint_name), '') FROM information_schema.referential_constraints WHERE constraint_schema = DATABASE() AND table_name = 'responses');
+SET @drop_fk_2 = IF(@fk_2 = '', 'DO 0', CONCAT('ALTER TABLE responses DROP FOREIGN KEY ', @fk_2));
+PREPARE drop_fk_2 FROM @drop_fk_2;
+EXECUTE drop_fk_2;
+DEALLOCATE PREPARE drop_fk_2;
+
+SET @fk_3 = (SELECT IFNULL(MIN(constraint_name), '') FROM information_schema.referential_constraints WHERE constraint_schema = DATABASE() AND table_name = 'responses');
+SET @drop_fk_3 = IF(@fk_3 = '', 'DO 0', CONCAT('ALTER TABLE responses DROP FOREIGN KEY ', @fk_3));
+PREPARE drop_fk_3 FROM @drop_fk_3;
+EXECUTE drop_fk_3;
+DEALLOCATE PREPARE drop_fk_3;
+
+ALTER TABLE responses
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, created_at),
+    DROP KEY uk_responses_vote,
+    ADD UNIQUE KEY uk_responses_vote (poll_id, choice_id, user_id, created_at),
+    DROP KEY uk_responses_voter,
+    ADD UNIQUE KEY uk_responses_voter (poll_id, voter_id, created_at);
+
+ALTER TABLE responses PARTITION BY RANGE (UNIX_TIMESTAMP(created_at)) (
+    PARTITION p_past VALUES LESS THAN (UNIX_TIMESTAMP('2026-01-01 00:00:00')),
+    PARTITION p2026_01 VALUES LESS THAN (UNIX_TIMESTAMP('2026-02-01 00:00:00')),
+    PARTITION p2026_02 VALUES LESS THAN (UNIX_TIMESTAMP('2026-03-01 00:00:00')),
+    PARTITION p2026_03 VALUES LESS THAN (UNIX_TIMESTAMP('2026-04-01 00:00:00')),
+    PARTITION p2026_04 VALUES LESS THAN (UNIX_TIMESTAMP('2026-05-01 00:00:00')),
+    PARTITION p2026_05 VALUES LESS THAN (UNIX_TIMESTAMP('2026-06-01 00:00:00')),
+    PARTITION p2026_06 VALUES LESS THAN (UNIX_TIMESTAMP('2026-07-01 00:00:00')),
+    PARTITION p2026_07 VALUES LESS THAN (UNIX_TIMESTAMP('2026-08-01 00:00:00')),
+    PARTITION p2026_08 VALUES LESS THAN (UNIX_TIMESTAMP('2026-09-01 00:00:00')),
+    PARTITION p2026_09 VALUES LESS THAN (UNIX_TIMESTAMP('2026-10-01 00:00:00')),
+    PARTITION p2026_10 VALUES LESS THAN (UNIX_TIMESTAMP('2026-11-01 00:00:00')),
+    PARTITION p2026_11 VALUES LESS THAN (UNIX_TIMESTAMP('2026-12-01 00:00:00')),
+    PARTITION p2026_12 VALUES LESS THAN (UNIX_TIMESTAMP('2027-01-01 00:00:00')),
+    PARTITION p_future VALUES LESS THAN MAXVALUE
+);
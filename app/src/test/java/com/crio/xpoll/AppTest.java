@@ -1,27 +1,70 @@
 package com.crio.xpoll;
 
+import com.crio.xpoll.api.ApiServer;
+import com.crio.xpoll.batch.BatchRunner;
+import com.crio.xpoll.dao.AsyncResponseDAO;
 import com.crio.xpoll.dao.PollDAO;
+import com.crio.xpoll.dao.ResponseBatchWriter;
 import com.crio.xpoll.dao.ResponseDAO;
+import com.crio.xpoll.dao.ResponseExporter;
+import com.crio.xpoll.dao.ResponseImporter;
+import com.crio.xpoll.dao.ResponseListener;
 import com.crio.xpoll.dao.UserDAO;
+import com.crio.xpoll.dao.VoteGuard;
+import com.crio.xpoll.dao.VoteTally;
+import com.crio.xpoll.live.LiveResultsPublisher;
+import com.crio.xpoll.live.PollUpdate;
+import com.crio.xpoll.metrics.DaoMetrics;
+import com.crio.xpoll.metrics.MethodMetrics;
+import com.crio.xpoll.model.Choice;
 import com.crio.xpoll.model.Poll;
+import com.crio.xpoll.model.PollResults;
 import com.crio.xpoll.model.PollSummary;
 import com.crio.xpoll.model.Response;
 import com.crio.xpoll.model.User;
+import com.crio.xpoll.util.DaoExecutor;
 import com.crio.xpoll.util.DatabaseConnection;
 import com.crio.xpoll.util.DatabaseSetup;
+import com.crio.xpoll.util.LruCache;
+import com.crio.xpoll.util.ShardRouter;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -75,6 +118,7 @@ public class AppTest {
             conn.createStatement().execute("DELETE FROM choices");
             conn.createStatement().execute("DELETE FROM polls");
             conn.createStatement().execute("DELETE FROM users");
+            conn.createStatement().execute("DELETE FROM tally_checkpoints");
         }
     }
 
@@ -130,6 +174,23 @@ public class AppTest {
         assertEquals(1, summaries.get(2).getResponseCount());
     }
 
+    @Test
+    public void testPollResultsShareTheCachedPollsText() throws SQLException {
+        User user = userDAO.createUser("testUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        responseDAO.createResponse(poll.getId(), poll.getChoices().get(1).getId(), user.getUserId());
+
+        PollResults results = pollDAO.getPollResults(poll.getId(), null);
+
+        assertEquals(2, results.size());
+        assertEquals(poll.getChoices().get(1).getId(), results.getChoiceId(1));
+        assertEquals(0, results.getCount(0));
+        assertEquals(1, results.getCount(1));
+        assertEquals(1, results.getTotalCount());
+        assertSame(poll.getQuestion(), results.getQuestion());
+        assertSame(poll.getChoices().get(1).getChoiceText(), results.getChoiceText(1));
+    }
+
     @Test
     public void testClosePoll() throws SQLException {
         User user = userDAO.createUser("testUser", "password");
@@ -141,4 +202,636 @@ public class AppTest {
 
         assertTrue(closedPoll.isClosed());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConnectionsAreReturnedToPool() throws SQLException {
+        for (int i = 0; i < 50; i++) {
+            try (Connection conn = databaseConnection.getConnection()) {
+                assertTrue(conn.isValid(1));
+            }
+        }
+
+        assertTrue(databaseConnection.getPool().getTotalConnections() <= databaseConnection.getPool().getMaxSize());
+        assertTrue(databaseConnection.getPool().getIdleConnections() >= 1);
+    }
+
+    @Test
+    public void testBatchedResponsesCompleteOnCommit() throws Exception {
+        User user = userDAO.createUser("testUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        try (ResponseBatchWriter writer = new ResponseBatchWriter(responseDAO)) {
+            for (Choice choice : poll.getChoices()) {
+                futures.add(writer.submit(poll.getId(), choice.getId(), user.getUserId()));
+            }
+            for (CompletableFuture<Response> future : futures) {
+                assertNotNull(future.get(5, TimeUnit.SECONDS));
+            }
+        }
+
+        List<PollSummary> summaries = pollDAO.getPollSummaries(poll.getId());
+        assertEquals(1, summaries.get(0).getResponseCount());
+        assertEquals(1, summaries.get(1).getResponseCount());
+    }
+
+    @Test
+    public void testVotesSubmittedDuringCloseAllComplete() throws Exception {
+        User user = userDAO.createUser("testUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        int choiceId = poll.getChoices().get(0).getId();
+
+        for (int round = 0; round < 20; round++) {
+            ResponseBatchWriter writer = new ResponseBatchWriter(responseDAO);
+            List<CompletableFuture<Response>> futures = new ArrayList<>();
+            Thread submitter = new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    futures.add(writer.submit(poll.getId(), choiceId, user.getUserId()));
+                }
+            });
+            submitter.start();
+            writer.close();
+            submitter.join();
+
+            // Committed, rejected as a repeat or refused as closed, but never left waiting
+            for (CompletableFuture<Response> future : futures) {
+                future.handle((response, error) -> null).get(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchWriterSurvivesUnexpectedErrors() throws Exception {
+        User user = userDAO.createUser("testUser", "password");
+        User other = userDAO.createUser("otherUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        ResponseListener failing = responses -> {
+            throw new AssertionError("listener bug");
+        };
+
+        try (ResponseBatchWriter writer = new ResponseBatchWriter(responseDAO)) {
+            responseDAO.addListener(failing);
+            CompletableFuture<Response> failed = writer.submit(poll.getId(), poll.getChoices().get(0).getId(), user.getUserId());
+            ExecutionException e = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof AssertionError);
+
+            // The writer thread is still there for the next batch
+            responseDAO.removeListener(failing);
+            assertNotNull(writer.submit(poll.getId(), poll.getChoices().get(1).getId(), other.getUserId()).get(5, TimeUnit.SECONDS));
+        } finally {
+            responseDAO.removeListener(failing);
+        }
+    }
+
+    @Test
+    public void testBatchFailureOnOneShardKeepsOtherShardsVotes() throws Exception {
+        // Two shards on the same database, so the votes of two polls commit in separate transactions
+        ShardRouter router = new ShardRouter(Arrays.asList(databaseConnection, databaseConnection));
+        ResponseDAO shardedResponses = new ResponseDAO(router);
+        User user = userDAO.createUser("testUser", "password");
+        Poll first = pollDAO.createPoll(user.getUserId(), "First", Arrays.asList("Option 1"));
+        Poll second = pollDAO.createPoll(user.getUserId(), "Second", Arrays.asList("Option 1"));
+        while (router.shardOf(second.getId()) == router.shardOf(first.getId())) {
+            second = pollDAO.createPoll(user.getUserId(), "Second", Arrays.asList("Option 1"));
+        }
+        int duplicateChoice = second.getChoices().get(0).getId();
+        shardedResponses.createResponse(second.getId(), duplicateChoice, user.getUserId());
+
+        try (ResponseBatchWriter writer = new ResponseBatchWriter(shardedResponses, 16, 2, 1_000)) {
+            CompletableFuture<Response> good = writer.submit(first.getId(), first.getChoices().get(0).getId(), user.getUserId());
+            CompletableFuture<Response> duplicate = writer.submit(second.getId(), duplicateChoice, user.getUserId());
+
+            assertNotNull(good.get(5, TimeUnit.SECONDS));
+            ExecutionException e = assertThrows(ExecutionException.class, () -> duplicate.get(5, TimeUnit.SECONDS));
+            assertTrue(e.getCause() instanceof SQLIntegrityConstraintViolationException);
+        }
+        assertEquals(1, pollDAO.getPollSummaries(first.getId()).get(0).getResponseCount());
+    }
+
+    @Test
+    public void testReconcileChoiceCounts() throws SQLException {
+        User user = userDAO.createUser("testUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        responseDAO.createResponse(poll.getId(), poll.getChoices().get(1).getId(), user.getUserId());
+
+        try (Connection conn = databaseConnection.getConnection()) {
+            conn.createStatement().execute("DELETE FROM choice_counts");
+        }
+        assertEquals(0, pollDAO.getPollSummaries(poll.getId()).get(1).getResponseCount());
+
+        responseDAO.reconcileChoiceCounts(poll.getId());
+
+        List<PollSummary> summaries = pollDAO.getPollSummaries(poll.getId());
+        assertEquals(0, summaries.get(0).getResponseCount());
+        assertEquals(1, summaries.get(1).getResponseCount());
+    }
+
+    @Test
+    public void testCreatePollReturnsChoiceIdsInOrder() throws SQLException {
+        User user = userDAO.createUser("testUser", "password");
+        List<String> choices = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            choices.add("Option " + i);
+        }
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", choices);
+        pollDAO.getPollCache().invalidateAll();
+        Poll loaded = pollDAO.getPoll(poll.getId());
+
+        assertEquals(20, loaded.getChoices().size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(poll.getChoices().get(i).getId(), loaded.getChoices().get(i).getId());
+            assertEquals("Option " + (i + 1), loaded.getChoices().get(i).getChoiceText());
+        }
+    }
+
+    @Test
+    public void testAsyncResponsesFanOut() throws Exception {
+        User owner = userDAO.createUser("testUser", "password");
+        Poll poll = pollDAO.createPoll(owner.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        int choiceId = poll.getChoices().get(0).getId();
+
+        List<CompletableFuture<Response>> futures = new ArrayList<>();
+        try (DaoExecutor executor = DaoExecutor.forConnection(databaseConnection)) {
+            AsyncResponseDAO asyncResponseDAO = new AsyncResponseDAO(responseDAO, executor);
+            for (int i = 0; i < 20; i++) {
+                User voter = userDAO.createUser("voter" + i, "password");
+                futures.add(asyncResponseDAO.createResponse(poll.getId(), choiceId, voter.getUserId()));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(20, pollDAO.getPollSummaries(poll.getId()).get(0).getResponseCount());
+    }
+
+    @Test
+    public void testImportResponsesFromCsv() throws Exception {
+        User user = userDAO.createUser("testUser", "password");
+        User other = userDAO.createUser("otherUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        int first = poll.getChoices().get(0).getId();
+        int second = poll.getChoices().get(1).getId();
+
+        Path csv = Files.createTempFile("responses", ".csv");
+        Files.write(csv, Arrays.asList(
+                "poll_id,choice_id,user_id",
+                poll.getId() + "," + first + "," + user.getUserId(),
+                poll.getId() + "," + first + "," + other.getUserId(),
+                poll.getId() + "," + second + "," + user.getUserId()));
+
+        ResponseImporter.Result result = new ResponseImporter(responseDAO, 2, false).importFile(csv, null);
+        Files.delete(csv);
+
+        assertEquals(3, result.getRowsImported());
+        List<PollSummary> summaries = pollDAO.getPollSummaries(poll.getId());
+        assertEquals(2, summaries.get(0).getResponseCount());
+        assertEquals(1, summaries.get(1).getResponseCount());
+    }
+
+    @Test
+    public void testImportSkipsDuplicatesAndReadsUtcTimestamps() throws Exception {
+        User user = userDAO.createUser("testUser", "password");
+        User other = userDAO.createUser("otherUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        int first = poll.getChoices().get(0).getId();
+
+        Path csv = Files.createTempFile("responses", ".csv");
+        Files.write(csv, Arrays.asList(
+                poll.getId() + "," + first + "," + user.getUserId() + ",2026-01-02T03:04:05Z",
+                poll.getId() + "," + first + "," + user.getUserId() + ",2026-01-02T03:04:05Z",
+                poll.getId() + "," + first + "," + other.getUserId() + ",2026-01-02T05:04:05+02:00"));
+
+        ResponseImporter.Result result = new ResponseImporter(responseDAO, 100, true).importFile(csv, null);
+        Files.delete(csv);
+
+        // The repeated row is skipped and not counted as imported
+        assertEquals(2, result.getRowsImported());
+        try (Connection conn = databaseConnection.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT created_at FROM responses WHERE poll_id = " + poll.getId())) {
+            while (rs.next()) {
+                assertEquals(Instant.parse("2026-01-02T03:04:05Z").toEpochMilli(), rs.getTimestamp(1).getTime());
+            }
+        }
+    }
+
+    @Test
+    public void testExportResponsesRoundTrips() throws Exception {
+        User user = userDAO.createUser("testUser", "password");
+        User other = userDAO.createUser("otherUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        int first = poll.getChoices().get(0).getId();
+        responseDAO.createResponse(poll.getId(), first, user.getUserId());
+        responseDAO.createResponse(poll.getId(), first, other.getUserId());
+
+        Path ndjson = Files.createTempFile("responses", ".ndjson");
+        ResponseExporter.Result result = new ResponseExporter(responseDAO).exportFile(poll.getId(), null, null, ndjson, null);
+        List<String> lines = Files.readAllLines(ndjson);
+
+        assertEquals(2, result.getRowsExported());
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith("{\"poll_id\":" + poll.getId() + ",\"choice_id\":" + first));
+
+        // The export is valid import input
+        try (Connection conn = databaseConnection.getConnection()) {
+            conn.createStatement().execute("DELETE FROM responses");
+        }
+        new ResponseImporter(responseDAO, 100, false).importFile(ndjson, null);
+        Files.delete(ndjson);
+        assertEquals(2, pollDAO.getPollSummaries(poll.getId()).get(0).getResponseCount());
+    }
+
+    @Test
+    public void testGetUserById() throws SQLException {
+        User user = userDAO.createUser("testUser", "password");
+        userDAO.getUserCache().invalidateAll();
+
+        User loaded = userDAO.getUserById(user.getUserId());
+
+        assertNotNull(loaded);
+        assertEquals("testUser", loaded.getUsername());
+        assertNull(userDAO.getUserById(-1));
+    }
+
+    @Test
+    public void testGetUsersByIds() throws SQLException {
+        User first = userDAO.createUser("firstUser", "password");
+        User second = userDAO.createUser("secondUser", "password");
+        userDAO.getUserCache().invalidate(second.getUserId());
+
+        Map<Integer, User> users = userDAO.getUsersByIds(Arrays.asList(second.getUserId(), first.getUserId(), -1));
+
+        assertEquals(2, users.size());
+        assertEquals("secondUser", users.get(second.getUserId()).getUsername());
+        assertEquals("firstUser", users.get(first.getUserId()).getUsername());
+    }
+
+    @Test
+    public void testUserLookupsCountCacheHits() throws SQLException {
+        MethodMetrics lookups = DaoMetrics.getInstance().method("UserDAO.getUserById");
+        MethodMetrics loads = DaoMetrics.getInstance().method("UserDAO.getUserById.load");
+        User user = userDAO.createUser("testUser", "password");
+        long lookupsBefore = lookups.getCalls();
+        long loadsBefore = loads.getCalls();
+
+        userDAO.getUserById(user.getUserId());
+        userDAO.getUserCache().invalidate(user.getUserId());
+        userDAO.getUserById(user.getUserId());
+
+        assertEquals(2, lookups.getCalls() - lookupsBefore);
+        assertEquals(1, loads.getCalls() - loadsBefore);
+    }
+
+    @Test
+    public void testLiveResultsPushCoalescedTotals() throws Exception {
+        User user = userDAO.createUser("testUser", "password");
+        User second = userDAO.createUser("secondUser", "password");
+        User third = userDAO.createUser("thirdUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "What is your favorite color?", Arrays.asList("Red", "Blue"));
+        int red = poll.getChoices().get(0).getId();
+        responseDAO.createResponse(poll.getId(), red, user.getUserId());
+
+        try (LiveResultsPublisher publisher = new LiveResultsPublisher(id -> pollDAO.getChoiceCounts(id, null), 50)) {
+            responseDAO.addListener(publisher);
+            BlockingQueue<PollUpdate> updates = new LinkedBlockingQueue<>();
+            try (LiveResultsPublisher.Subscription subscription = publisher.subscribe(poll.getId(), updates::add)) {
+                assertEquals(1, updates.take().getCount(red));
+
+                responseDAO.createResponse(poll.getId(), red, second.getUserId());
+                responseDAO.createResponse(poll.getId(), red, third.getUserId());
+
+                PollUpdate update = updates.poll(5, TimeUnit.SECONDS);
+                while (update != null && update.getCount(red) < 3) {
+                    update = updates.poll(5, TimeUnit.SECONDS);
+                }
+                assertNotNull(update);
+                assertEquals(3, update.getCount(red));
+            } finally {
+                responseDAO.removeListener(publisher);
+            }
+        }
+    }
+
+    @Test
+    public void testFastTallyCountsInMemoryAndReloads() throws SQLException {
+        ShardRouter router = ShardRouter.single(databaseConnection);
+        User user = userDAO.createUser("testUser", "password");
+        User second = userDAO.createUser("secondUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "What is your favorite color?", Arrays.asList("Red", "Blue"));
+        int red = poll.getChoices().get(0).getId();
+
+        try (VoteTally tally = new VoteTally(router, null, 60_000, 0)) {
+            tally.start();
+            ResponseDAO fastResponses = new ResponseDAO(router, tally);
+            PollDAO fastPolls = new PollDAO(databaseConnection, new LruCache<>(10, 60_000), router, tally);
+
+            fastResponses.createResponse(poll.getId(), red, user.getUserId());
+            fastResponses.createResponses(Arrays.asList(new Response(poll.getId(), red, second.getUserId())));
+
+            assertEquals(2, fastPolls.getPollSummaries(poll.getId()).get(0).getResponseCount());
+            tally.checkpoint();
+        }
+
+        // A restarted node sees the checkpointed counts plus whatever came after the checkpoint
+        try (VoteTally restarted = new VoteTally(router, null, 60_000, 0)) {
+            restarted.start();
+            assertEquals(2, restarted.getCounts(poll.getId()).get(red).longValue());
+        }
+    }
+
+    @Test
+    public void testReconcilingOnePollKeepsTheTallyCheckpoint() throws SQLException {
+        ShardRouter router = ShardRouter.single(databaseConnection);
+        User user = userDAO.createUser("testUser", "password");
+        User second = userDAO.createUser("secondUser", "password");
+        User third = userDAO.createUser("thirdUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "What is your favorite color?", Arrays.asList("Red", "Blue"));
+        int red = poll.getChoices().get(0).getId();
+
+        try (VoteTally tally = new VoteTally(router, null, 60_000, 0)) {
+            tally.start();
+            ResponseDAO fastResponses = new ResponseDAO(router, tally);
+            fastResponses.createResponse(poll.getId(), red, user.getUserId());
+            fastResponses.createResponse(poll.getId(), red, second.getUserId());
+            tally.checkpoint();
+            fastResponses.createResponse(poll.getId(), red, third.getUserId());
+
+            fastResponses.reconcileChoiceCounts(poll.getId());
+            try (Connection conn = databaseConnection.getConnection();
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM tally_checkpoints")) {
+                rs.next();
+                assertEquals(1, rs.getInt(1));
+            }
+            assertEquals(3, tally.getCounts(poll.getId()).get(red).longValue());
+            tally.checkpoint();
+        }
+
+        // The vote after the checkpoint is counted once, by the rebuild or by the next checkpoint
+        try (VoteTally restarted = new VoteTally(router, null, 60_000, 0)) {
+            restarted.start();
+            assertEquals(3, restarted.getCounts(poll.getId()).get(red).longValue());
+        }
+    }
+
+    @Test
+    public void testOneVotePerUser() throws SQLException {
+        ShardRouter router = ShardRouter.single(databaseConnection);
+        VoteGuard voteGuard = new VoteGuard(router, 1_000, 0.01, 10);
+        ResponseDAO guarded = new ResponseDAO(router, null, voteGuard);
+        User user = userDAO.createUser("testUser", "password");
+        User second = userDAO.createUser("secondUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "What is your favorite color?", Arrays.asList("Red", "Blue"));
+        int red = poll.getChoices().get(0).getId();
+        int blue = poll.getChoices().get(1).getId();
+
+        guarded.createResponse(poll.getId(), red, user.getUserId());
+
+        assertThrows(SQLIntegrityConstraintViolationException.class,
+                () -> guarded.createResponse(poll.getId(), blue, user.getUserId()));
+        assertThrows(SQLIntegrityConstraintViolationException.class,
+                () -> guarded.createResponses(Arrays.asList(new Response(poll.getId(), blue, second.getUserId()),
+                        new Response(poll.getId(), blue, user.getUserId()))));
+
+        guarded.createResponse(poll.getId(), blue, second.getUserId());
+        assertEquals(1, pollDAO.getPollSummaries(poll.getId()).get(1).getResponseCount());
+        assertTrue(voteGuard.getChecksSkipped() >= 2);
+    }
+
+    @Test
+    public void testOneVotePerUserIsEnforcedAcrossNodes() throws SQLException {
+        ShardRouter router = ShardRouter.single(databaseConnection);
+        // Two nodes, each with its own filters; the first keeps a single poll's filter at a time
+        ResponseDAO firstNode = new ResponseDAO(router, null, new VoteGuard(router, 1_000, 0.01, 1));
+        ResponseDAO secondNode = new ResponseDAO(router, null, new VoteGuard(router, 1_000, 0.01, 10));
+        User user = userDAO.createUser("testUser", "password");
+        User second = userDAO.createUser("secondUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "What is your favorite color?", Arrays.asList("Red", "Blue"));
+        Poll other = pollDAO.createPoll(user.getUserId(), "What is your favorite fruit?", Arrays.asList("Apple", "Pear"));
+        int red = poll.getChoices().get(0).getId();
+        int blue = poll.getChoices().get(1).getId();
+
+        firstNode.createResponse(poll.getId(), red, user.getUserId());
+        secondNode.createResponse(poll.getId(), red, second.getUserId());
+
+        // The first node's filter has not seen the vote, so the unique key rejects it
+        assertThrows(SQLIntegrityConstraintViolationException.class,
+                () -> firstNode.createResponse(poll.getId(), blue, second.getUserId()));
+
+        // Voting on another poll drops the first poll's filter; it is reloaded on the next vote
+        firstNode.createResponse(other.getId(), other.getChoices().get(0).getId(), user.getUserId());
+        assertThrows(SQLIntegrityConstraintViolationException.class,
+                () -> firstNode.createResponse(poll.getId(), blue, user.getUserId()));
+        assertEquals(0, pollDAO.getPollSummaries(poll.getId()).get(1).getResponseCount());
+    }
+
+    @Test
+    public void testMigrateKeepsDataWhenSchemaIsCurrent() throws SQLException {
+        User user = userDAO.createUser("testUser", "password");
+
+        DatabaseSetup.migrate(databaseConnection);
+
+        assertEquals("testUser", userDAO.getUserById(user.getUserId()).getUsername());
+        try (Connection conn = databaseConnection.getConnection();
+             ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*), MAX(version) FROM schema_version")) {
+            rs.next();
+            // Every version recorded exactly once
+            assertTrue(rs.getInt(1) > 0);
+            assertEquals(rs.getInt(2), rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void testMigrateUpgradesBaselineSchema() throws SQLException {
+        User user = userDAO.createUser("testUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        int first = poll.getChoices().get(0).getId();
+
+        // Turn the database back into the original layout, with one vote and no version table
+        try (Connection conn = databaseConnection.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE schema_version");
+            stmt.execute("DROP TABLE choice_counts");
+            stmt.execute("DROP TABLE tally_checkpoints");
+            stmt.execute("DROP TABLE responses");
+            stmt.execute("CREATE TABLE responses (poll_id INT NOT NULL, choice_id INT NOT NULL, user_id INT NOT NULL, "
+                    + "created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP, PRIMARY KEY (poll_id,choice_id,user_id), "
+                    + "FOREIGN KEY (poll_id) REFERENCES polls(id) ON DELETE CASCADE, "
+                    + "FOREIGN KEY (choice_id) REFERENCES choices(id) ON DELETE CASCADE, "
+                    + "FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE)");
+            stmt.execute("INSERT INTO responses (poll_id, choice_id, user_id) VALUES ("
+                    + poll.getId() + ", " + first + ", " + user.getUserId() + ")");
+        }
+
+        DatabaseSetup.migrate(databaseConnection);
+        // Running it again is a no-op
+        DatabaseSetup.migrate(databaseConnection);
+
+        // The counters are backfilled and new votes go through the upgraded table
+        assertEquals(1, pollDAO.getPollSummaries(poll.getId()).get(0).getResponseCount());
+        responseDAO.createResponse(poll.getId(), poll.getChoices().get(1).getId(), user.getUserId());
+        assertEquals(1, pollDAO.getPollSummaries(poll.getId()).get(1).getResponseCount());
+        try (Connection conn = databaseConnection.getConnection();
+             ResultSet rs = conn.createStatement().executeQuery("SELECT COUNT(*), MAX(version) FROM schema_version")) {
+            rs.next();
+            assertEquals(rs.getInt(2), rs.getInt(1));
+            assertTrue(rs.getInt(2) >= 4);
+        }
+    }
+
+    @Test
+    public void testBatchScriptRunsOperationsInOrder() throws IOException, SQLException {
+        String script = String.join("\n",
+                "# two voters and a poll",
+                "user alice secret",
+                "user bob secret",
+                "poll colors @alice \"What is your favorite color?\" Red Blue",
+                "vote @colors #1 @alice",
+                "vote @colors #2 @bob",
+                "vote @colors #2 @bob",
+                "summary @colors",
+                "close @colors",
+                "vote @colors #1 @bob",
+                "frobnicate 1");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        BatchRunner.Result result;
+        try (DaoExecutor executor = new DaoExecutor(4)) {
+            result = new BatchRunner(userDAO, pollDAO, responseDAO, executor, 2, new PrintStream(output, true))
+                    .run(new StringReader(script));
+        }
+
+        assertEquals(2, result.getUsersCreated());
+        assertEquals(1, result.getPollsCreated());
+        assertEquals(2, result.getVotesRecorded());
+        assertEquals(1, result.getPollsClosed());
+        // The repeated vote, the vote after closing and the unknown operation
+        assertEquals(3, result.getFailed());
+        assertTrue(output.toString().contains("What is your favorite color?: Blue - 1 responses"));
+    }
+
+    @Test
+    public void testBatchScriptRetriesABatchWithARepeatedVote() throws IOException, SQLException {
+        // Without a VoteGuard the repeated vote only fails in the multi-row insert itself
+        String script = String.join("\n",
+                "user alice secret",
+                "user bob secret",
+                "user carol secret",
+                "poll colors @alice \"What is your favorite color?\" Red Blue",
+                "vote @colors #1 @alice",
+                "vote @colors #2 @bob",
+                "vote @colors #1 @alice",
+                "vote @colors #2 @carol",
+                "summary @colors");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        BatchRunner.Result result;
+        try (DaoExecutor executor = new DaoExecutor(4)) {
+            result = new BatchRunner(userDAO, pollDAO, responseDAO, executor, 16, new PrintStream(output, true))
+                    .run(new StringReader(script));
+        }
+
+        assertEquals(3, result.getVotesRecorded());
+        assertEquals(1, result.getFailed());
+        assertTrue(output.toString().contains("What is your favorite color?: Blue - 2 responses"));
+    }
+
+    @Test
+    public void testBatchScriptKeepsVotesWrittenBeforeARetryFails() throws IOException, SQLException {
+        String script = String.join("\n",
+                "user alice secret",
+                "user bob secret",
+                "user carol secret",
+                "poll colors @alice \"What is your favorite color?\" Red Blue",
+                "vote @colors #1 @alice",
+                "vote @colors #1 @alice",
+                "vote @colors #1 @bob",
+                "vote @colors #1 @carol");
+        // The repeated vote sends the batch to the vote-by-vote retry, whose last vote then hits a database error
+        AtomicInteger retried = new AtomicInteger();
+        ResponseDAO failingLastVote = new ResponseDAO(databaseConnection) {
+            @Override
+            public Response createResponse(int pollId, int choiceId, int userId) throws SQLException {
+                if (retried.incrementAndGet() == 4) {
+                    throw new SQLException("Connection lost");
+                }
+                return super.createResponse(pollId, choiceId, userId);
+            }
+        };
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        BatchRunner.Result result;
+        try (DaoExecutor executor = new DaoExecutor(4)) {
+            result = new BatchRunner(userDAO, pollDAO, failingLastVote, executor, 4, new PrintStream(output, true))
+                    .run(new StringReader(script));
+        }
+
+        // Alice's and Bob's votes were committed by the retry; only the repeated vote and Carol's failed
+        assertEquals(2, result.getVotesRecorded());
+        assertEquals(2, result.getFailed());
+        assertTrue(output.toString().contains("Connection lost"));
+    }
+
+    @Test
+    public void testHttpApiCreatesPollsAndRecordsVotes() throws IOException, InterruptedException, SQLException {
+        User user = userDAO.createUser("testUser", "password");
+        User second = userDAO.createUser("secondUser", "password");
+
+        try (ApiServer server = new ApiServer(new InetSocketAddress("localhost", 0), userDAO, pollDAO, responseDAO, null)) {
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://localhost:" + server.getPort() + "/api/polls";
+
+            HttpResponse<String> created = client.send(HttpRequest.newBuilder(URI.create(base))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"userId\":" + user.getUserId()
+                            + ",\"question\":\"What is your \\\"favorite\\\" color?\",\"choices\":[\"Red\",\"Blue\"]}"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(201, created.statusCode());
+            Poll poll = pollDAO.getPoll(Integer.parseInt(created.body().replaceAll("^\\{\"id\":(\\d+),.*$", "$1")));
+            assertEquals("What is your \"favorite\" color?", poll.getQuestion());
+            int blue = poll.getChoices().get(1).getId();
+
+            String votes = base + "/" + poll.getId() + "/votes";
+            String vote = "{\"choiceId\":" + blue + ",\"userId\":" + second.getUserId() + "}";
+            assertEquals(201, client.send(HttpRequest.newBuilder(URI.create(votes)).POST(HttpRequest.BodyPublishers.ofString(vote))
+                    .build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals(409, client.send(HttpRequest.newBuilder(URI.create(votes)).POST(HttpRequest.BodyPublishers.ofString(vote))
+                    .build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            HttpResponse<String> summary = client.send(HttpRequest.newBuilder(URI.create(base + "/" + poll.getId() + "/summary"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, summary.statusCode());
+            assertTrue(summary.body().contains("{\"id\":" + blue + ",\"text\":\"Blue\",\"count\":1}"));
+
+            assertEquals(204, client.send(HttpRequest.newBuilder(URI.create(base + "/" + poll.getId() + "/close"))
+                    .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+            assertEquals(404, client.send(HttpRequest.newBuilder(URI.create(base + "/999999")).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+    }
+
+    @Test
+    public void testHttpApiAnswersUnexpectedErrorsWith500() throws IOException, InterruptedException, SQLException {
+        User user = userDAO.createUser("testUser", "password");
+        Poll poll = pollDAO.createPoll(user.getUserId(), "Sample Question", Arrays.asList("Option 1", "Option 2"));
+        ResponseListener failing = responses -> {
+            throw new AssertionError("listener bug");
+        };
+
+        try (ApiServer server = new ApiServer(new InetSocketAddress("localhost", 0), userDAO, pollDAO, responseDAO, null)) {
+            server.start();
+            HttpClient client = HttpClient.newHttpClient();
+            String votes = "http://localhost:" + server.getPort() + "/api/polls/" + poll.getId() + "/votes";
+            String vote = "{\"choiceId\":" + poll.getChoices().get(0).getId() + ",\"userId\":" + user.getUserId() + "}";
+
+            responseDAO.addListener(failing);
+            assertEquals(500, client.send(HttpRequest.newBuilder(URI.create(votes)).POST(HttpRequest.BodyPublishers.ofString(vote))
+                    .build(), HttpResponse.BodyHandlers.ofString()).statusCode());
+
+            responseDAO.removeListener(failing);
+            assertEquals(200, client.send(HttpRequest.newBuilder(URI.create(votes.replace("/votes", ""))).build(),
+                    HttpResponse.BodyHandlers.ofString()).statusCode());
+        } finally {
+            responseDAO.removeListener(failing);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.crio.xpoll.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void testPercentilesWithinBucketPrecision() {
+        Histogram histogram = new Histogram();
+        for (long v = 1; v <= 10_000; v++) {
+            histogram.record(v * 1_000);
+        }
+
+        assertEquals(10_000, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertWithin(5_000_000, histogram.getValueAtPercentile(50));
+        assertWithin(9_900_000, histogram.getValueAtPercentile(99));
+        assertWithin(9_990_000, histogram.getValueAtPercentile(99.9));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        histogram.record(7);
+        histogram.record(7);
+        histogram.record(3);
+
+        assertEquals(7, histogram.getValueAtPercentile(100));
+        assertEquals(3, histogram.getValueAtPercentile(1));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.04, "expected ~" + expected + " but was " + actual);
+    }
+}
@@ -0,0 +1,78 @@
+package com.crio.xpoll.trending;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.crio.xpoll.model.Response;
+
+public class TrendingServiceTest {
+
+    @Test
+    public void testTopPollsAreRankedPerWindowAndExpire() {
+        AtomicLong now = new AtomicLong(10_000_000);
+        TrendingService trending = new TrendingService(10, 3, 0, now::get);
+
+        trending.onResponsesCommitted(votes(1, 5));
+        trending.onResponsesCommitted(votes(2, 3));
+        now.addAndGet(30_000);
+        trending.onResponsesCommitted(votes(3, 4));
+        trending.refresh();
+
+        assertEquals(Arrays.asList(1, 3, 2), pollIds(trending.getTopPolls(TrendingService.Window.LAST_MINUTE, 5)));
+        assertEquals(5, trending.getTopPolls(TrendingService.Window.LAST_MINUTE, 1).get(0).getVotes());
+
+        // A minute later the first votes have left the minute window but not the hour
+        now.addAndGet(45_000);
+        trending.refresh();
+        assertEquals(Arrays.asList(3), pollIds(trending.getTopPolls(TrendingService.Window.LAST_MINUTE, 5)));
+        assertEquals(Arrays.asList(1, 3, 2), pollIds(trending.getTopPolls(TrendingService.Window.LAST_HOUR, 5)));
+        assertEquals(Arrays.asList(1, 3), pollIds(trending.getTopPolls(TrendingService.Window.LAST_DAY, 2)));
+    }
+
+    @Test
+    public void testHeavyHittersSurviveMorePollsThanCapacity() {
+        AtomicLong now = new AtomicLong(10_000_000);
+        TrendingService trending = new TrendingService(8, 2, 0, now::get);
+
+        List<Response> responses = new ArrayList<>();
+        for (int pollId = 100; pollId < 200; pollId++) {
+            responses.add(new Response(pollId, 1, 1));
+            if (pollId % 10 == 0) {
+                responses.addAll(votes(7, 20));
+                responses.addAll(votes(8, 10));
+            }
+        }
+        trending.onResponsesCommitted(responses);
+        trending.refresh();
+
+        List<TrendingPoll> top = trending.getTopPolls(TrendingService.Window.LAST_MINUTE, 2);
+        assertEquals(Arrays.asList(7, 8), pollIds(top));
+        for (TrendingPoll poll : top) {
+            long actual = poll.getPollId() == 7 ? 200 : 100;
+            assertTrue(poll.getVotes() >= actual && poll.getVotes() - poll.getMaxError() <= actual, poll.toString());
+        }
+    }
+
+    private static List<Response> votes(int pollId, int count) {
+        List<Response> responses = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            responses.add(new Response(pollId, 1, i + 1));
+        }
+        return responses;
+    }
+
+    private static List<Integer> pollIds(List<TrendingPoll> polls) {
+        List<Integer> ids = new ArrayList<>();
+        for (TrendingPoll poll : polls) {
+            ids.add(poll.getPollId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,33 @@
+package com.crio.xpoll.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class DatabaseSetupTest {
+
+    @Test
+    public void testSplitIgnoresSemicolonsInStringsAndComments() {
+        List<String> statements = DatabaseSetup.splitStatements(
+                "-- first; comment\n"
+                + "INSERT INTO t VALUES ('a;b', \"c;\"\"d\", 'it''s', 'x\\';y');\n"
+                + "# another; comment\n"
+                + "CREATE TABLE `odd;name` (id INT) /* block; comment */;\n"
+                + "SELECT /*+ MAX_EXECUTION_TIME(1) */ 1--1;\n"
+                + ";\n");
+
+        assertEquals(Arrays.asList(
+                "INSERT INTO t VALUES ('a;b', \"c;\"\"d\", 'it''s', 'x\\';y')",
+                "CREATE TABLE `odd;name` (id INT)",
+                "SELECT /*+ MAX_EXECUTION_TIME(1) */ 1--1"), statements);
+    }
+
+    @Test
+    public void testSplitRejectsUnterminatedQuote() {
+        assertThrows(IllegalArgumentException.class, () -> DatabaseSetup.splitStatements("SELECT 'open;"));
+    }
+}
@@ -0,0 +1,60 @@
+package com.crio.xpoll.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.sql.SQLException;
+
+import org.junit.jupiter.api.Test;
+
+public class LruCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        LruCache<Integer, String> cache = new LruCache<>(2, 0);
+        cache.put(1, "one");
+        cache.put(2, "two");
+        cache.get(1);
+        cache.put(3, "three");
+
+        assertEquals("one", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testLoadsOnMissOnly() throws SQLException {
+        LruCache<Integer, String> cache = new LruCache<>(10, 60_000);
+        int[] loads = new int[1];
+
+        cache.get(1, k -> { loads[0]++; return "one"; });
+        cache.get(1, k -> { loads[0]++; return "one"; });
+
+        assertEquals(1, loads[0]);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testExpiredEntriesAreMisses() throws InterruptedException {
+        LruCache<Integer, String> cache = new LruCache<>(10, 1);
+        cache.put(1, "one");
+        Thread.sleep(5);
+
+        assertNull(cache.get(1));
+    }
+
+    @Test
+    public void testLoadOverlappingInvalidateIsNotCached() throws SQLException {
+        LruCache<Integer, String> cache = new LruCache<>(10, 60_000);
+
+        // The key is invalidated while its old value is being loaded
+        String loaded = cache.get(1, k -> {
+            cache.invalidate(k);
+            return "open";
+        });
+
+        assertEquals("open", loaded);
+        assertNull(cache.get(1));
+    }
+}